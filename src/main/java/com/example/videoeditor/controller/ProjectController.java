@@ -8,25 +8,33 @@ import com.example.videoeditor.repository.ProjectRepository;
 import com.example.videoeditor.repository.UserRepository;
 import com.example.videoeditor.security.JwtUtil;
 import com.example.videoeditor.service.BackblazeB2Service;
+import com.example.videoeditor.service.FontRegistry;
 import com.example.videoeditor.service.VideoEditingService;
+import com.example.videoeditor.service.WaveformService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -38,6 +46,8 @@ public class ProjectController {
     private final JwtUtil jwtUtil;
     private final UserRepository userRepository;
     private final BackblazeB2Service backblazeB2Service;
+    private final WaveformService waveformService;
+    private final FontRegistry fontRegistry;
     private static final Logger logger = LoggerFactory.getLogger(ProjectController.class);
     @Value("${app.base-dir:/tmp}")
     private String baseDir;
@@ -46,12 +56,15 @@ public class ProjectController {
             VideoEditingService videoEditingService,
             ProjectRepository projectRepository,
             JwtUtil jwtUtil,
-            UserRepository userRepository, BackblazeB2Service backblazeB2Service) {
+            UserRepository userRepository, BackblazeB2Service backblazeB2Service,
+            WaveformService waveformService, FontRegistry fontRegistry) {
         this.videoEditingService = videoEditingService;
         this.projectRepository = projectRepository;
         this.jwtUtil = jwtUtil;
         this.userRepository = userRepository;
         this.backblazeB2Service = backblazeB2Service;
+        this.waveformService = waveformService;
+        this.fontRegistry = fontRegistry;
     }
 
     private User getUserFromToken(String token) {
@@ -76,15 +89,65 @@ public class ProjectController {
                 ((Number) request.get("fps")).floatValue() : null;
 
         Project project = videoEditingService.createProject(user, name, width, height, fps);
-        return ResponseEntity.ok(project);
+        return ResponseEntity.ok(videoEditingService.exposeLegacyJson(project));
     }
 
+    // Full projects with assets and timeline in the legacy JSON fields; /summary is the lighter paged list
     @GetMapping
     public ResponseEntity<List<Project>> getUserProjects(
-            @RequestHeader("Authorization") String token) {
+            @RequestHeader("Authorization") String token) throws JsonProcessingException {
         User user = getUserFromToken(token);
         List<Project> projects = projectRepository.findByUserOrderByLastModifiedDesc(user);
-        return ResponseEntity.ok(projects);
+        return ResponseEntity.ok(videoEditingService.exposeLegacyJson(projects));
+    }
+
+    // Font families installed on the render nodes, for the text tool's font picker
+    @GetMapping("/font-families")
+    public ResponseEntity<List<String>> getFontFamilies() {
+        return ResponseEntity.ok(fontRegistry.getFamilies());
+    }
+
+    // Paged project list without timeline/asset blobs; pass back nextCursor values to get the next page
+    @GetMapping("/summary")
+    public ResponseEntity<?> getUserProjectSummaries(
+            @RequestHeader("Authorization") String token,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursorLastModified,
+            @RequestParam(required = false) Long cursorId) {
+        try {
+            User user = getUserFromToken(token);
+            int pageSize = Math.max(1, Math.min(limit, 100));
+            // Fetch one extra row to know whether another page exists
+            PageRequest page = PageRequest.of(0, pageSize + 1);
+
+            List<ProjectSummary> rows;
+            if (cursorLastModified != null && cursorId != null) {
+                rows = projectRepository.findSummariesByUserBefore(
+                        user, LocalDateTime.parse(cursorLastModified), cursorId, page);
+            } else {
+                rows = projectRepository.findSummariesByUser(user, page);
+            }
+
+            boolean hasMore = rows.size() > pageSize;
+            List<ProjectSummary> projects = hasMore ? rows.subList(0, pageSize) : rows;
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("projects", projects);
+            response.put("hasMore", hasMore);
+            if (hasMore) {
+                ProjectSummary last = projects.get(projects.size() - 1);
+                Map<String, Object> nextCursor = new HashMap<>();
+                nextCursor.put("cursorLastModified", last.getLastModified().toString());
+                nextCursor.put("cursorId", last.getId());
+                response.put("nextCursor", nextCursor);
+            }
+            return ResponseEntity.ok(response);
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().body("Invalid cursorLastModified: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error listing projects: " + e.getMessage());
+        }
     }
 
     @PostMapping("/{projectId}/session")
@@ -138,11 +201,11 @@ public class ProjectController {
     public ResponseEntity<Project> getProjectDetails(
             @RequestHeader("Authorization") String token,
             @PathVariable Long projectId
-    ) {
+    ) throws JsonProcessingException {
         User user = getUserFromToken(token);
         Project project = projectRepository.findByIdAndUser(projectId, user);
 
-        return ResponseEntity.ok(project);
+        return ResponseEntity.ok(videoEditingService.exposeLegacyJson(project));
     }
 
     @PostMapping("/{projectId}/add-to-timeline")
@@ -607,7 +670,7 @@ public class ProjectController {
             User user = getUserFromToken(token);
             Project updatedProject = videoEditingService.uploadAudioToProject(user, projectId, audioFiles, audioFileNames);
 
-            // Extract audio metadata with waveform JSON paths from audioJson
+            // Waveforms are generated in the background; clients poll assets/{assetId}/status until READY
             List<Map<String, String>> audioFilesMetadata = videoEditingService.getAudio(updatedProject);
             List<Map<String, String>> responseAudioFiles = audioFilesMetadata.stream()
                     .map(audio -> {
@@ -615,13 +678,15 @@ public class ProjectController {
                         audioData.put("audioFileName", audio.get("audioFileName"));
                         audioData.put("audioPath", audio.get("audioPath"));
                         audioData.put("waveformJsonPath", audio.get("waveformJsonPath"));
+                        audioData.put("assetId", audio.get("assetId"));
+                        audioData.put("processingStatus", audio.get("processingStatus"));
                         return audioData;
                     })
                     .collect(Collectors.toList());
 
             // Prepare response
             Map<String, Object> response = new HashMap<>();
-            response.put("project", updatedProject);
+            response.put("project", videoEditingService.exposeLegacyJson(updatedProject));
             response.put("audioFiles", responseAudioFiles);
 
             return ResponseEntity.ok(response);
@@ -636,6 +701,36 @@ public class ProjectController {
         }
     }
 
+    @GetMapping("/{projectId}/assets/status")
+    public ResponseEntity<?> getAssetStatuses(
+            @RequestHeader("Authorization") String token,
+            @PathVariable Long projectId) {
+        try {
+            User user = getUserFromToken(token);
+            return ResponseEntity.ok(videoEditingService.getAssetStatuses(user, projectId));
+        } catch (JsonProcessingException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error reading project assets: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/{projectId}/assets/{assetId}/status")
+    public ResponseEntity<?> getAssetStatus(
+            @RequestHeader("Authorization") String token,
+            @PathVariable Long projectId,
+            @PathVariable Long assetId) {
+        try {
+            User user = getUserFromToken(token);
+            return ResponseEntity.ok(videoEditingService.getAssetStatus(user, projectId, assetId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(e.getMessage());
+        }
+    }
+
     @PostMapping("/{projectId}/add-project-audio-to-timeline")
     public ResponseEntity<?> addProjectAudioToTimeline(
             @RequestHeader("Authorization") String token,
@@ -840,9 +935,11 @@ public class ProjectController {
         }
     }
 
+    // Sends the compact binary waveform when the client accepts it and one exists, otherwise the JSON
     @GetMapping("/{projectId}/waveform-json/{filename:.+}")
     public ResponseEntity<Resource> serveWaveformJson(
             @RequestHeader(value = "Authorization", required = false) String token,
+            @RequestHeader(value = "Accept", required = false) String accept,
             @PathVariable Long projectId,
             @PathVariable String filename) {
         try {
@@ -858,32 +955,72 @@ public class ProjectController {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
             }
 
+            // Both bodies come from the same URL, so caches must key on Accept
+            if (accept != null && accept.contains(WaveformService.BINARY_CONTENT_TYPE)) {
+                try {
+                    byte[] binary = waveformService.readBinary(projectId, filename);
+                    if (binary != null) {
+                        return serveBytes(binary, waveformService.binaryFileName(filename), WaveformService.BINARY_CONTENT_TYPE);
+                    }
+                } catch (B2Exception e) {
+                    // Waveform generated before the binary format existed, fall back to JSON
+                }
+            }
+
             String b2Path = "audio/projects/" + projectId + "/waveforms/" + filename;
-            File tempFile = backblazeB2Service.downloadFile(b2Path, baseDir + "/temp/waveform_json_" + filename);
+            File tempFile = new File(baseDir + "/temp/waveform_json_" + System.nanoTime() + "_" + filename);
+            try {
+                File downloaded = backblazeB2Service.downloadFile(b2Path, tempFile.getAbsolutePath());
+                if (!downloaded.exists()) {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(null);
+                }
+                return serveBytes(Files.readAllBytes(downloaded.toPath()), filename, "application/json");
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
 
-            if (!tempFile.exists()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        } catch (Exception e) {
+            System.err.println("Error serving waveform JSON: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
+
+    // Visible slice of the min/max waveform pyramid; filename is the waveform JSON name from waveformJsonPath
+    @GetMapping("/{projectId}/waveform-tile/{filename:.+}")
+    public ResponseEntity<byte[]> serveWaveformTile(
+            @RequestHeader(value = "Authorization", required = false) String token,
+            @PathVariable Long projectId,
+            @PathVariable String filename,
+            @RequestParam(defaultValue = "100") int peaksPerSecond,
+            @RequestParam double start,
+            @RequestParam double end,
+            @RequestParam(defaultValue = "16") int bits) {
+        try {
+            User user = null;
+            if (token != null && !token.isEmpty()) {
+                user = getUserFromToken(token);
             }
 
-            Resource resource = new InputStreamResource(Files.newInputStream(tempFile.toPath())) {
-                @Override
-                public String getFilename() {
-                    return filename;
-                }
+            Project project = projectRepository.findById(projectId)
+                    .orElseThrow(() -> new RuntimeException("Project not found with ID: " + projectId));
 
-                @Override
-                public long contentLength() throws IOException {
-                    return tempFile.length();
-                }
-            };
+            if (user != null && !project.getUser().getId().equals(user.getId())) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(null);
+            }
+            if (start < 0 || end <= start || peaksPerSecond <= 0 || (bits != 8 && bits != 16)) {
+                return ResponseEntity.badRequest().body(null);
+            }
 
-            String contentType = "application/json";
+            byte[] tile = waveformService.getTile(
+                    waveformService.pyramidPath(projectId, filename), peaksPerSecond, start, end, bits);
             return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(resource);
-
+                    .contentType(MediaType.parseMediaType(WaveformService.TILE_CONTENT_TYPE))
+                    .body(tile);
+        } catch (FileNotFoundException e) {
+            // Audio processed before pyramids existed; clients fall back to waveform-json
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         } catch (Exception e) {
-            System.err.println("Error serving waveform JSON: " + e.getMessage());
+            System.err.println("Error serving waveform tile: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
@@ -923,7 +1060,7 @@ public class ProjectController {
         try {
             User user = getUserFromToken(token);
             Project updatedProject = videoEditingService.uploadImageToProject(user, projectId, imageFiles, imageFileNames);
-            return ResponseEntity.ok(updatedProject);
+            return ResponseEntity.ok(videoEditingService.exposeLegacyJson(updatedProject));
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Error uploading image: " + e.getMessage());
@@ -1250,6 +1387,29 @@ public class ProjectController {
         }
     }
 
+    @GetMapping("/{projectId}/segments/{segmentId}/keyframes/{property}/curve")
+    public ResponseEntity<?> getKeyframeCurve(
+            @RequestHeader("Authorization") String token,
+            @PathVariable Long projectId,
+            @PathVariable String segmentId,
+            @PathVariable String property,
+            @RequestParam String sessionId,
+            @RequestParam String segmentType,
+            @RequestParam(defaultValue = "100") int samples) {
+        try {
+            User user = getUserFromToken(token);
+            Map<String, double[]> curve = videoEditingService.getKeyframeCurve(sessionId, segmentId, segmentType, property, samples);
+            return ResponseEntity.ok(curve);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error sampling keyframe curve: " + e.getMessage());
+        }
+    }
+
     // Helper method to determine content type
     private String determineContentType(String filename) {
         filename = filename.toLowerCase();
@@ -1589,6 +1749,7 @@ public class ProjectController {
 
             // Delete associated files
             videoEditingService.deleteProjectFiles(projectId);
+            videoEditingService.deleteProjectAssets(projectId);
             // Delete project from database
             projectRepository.delete(project);
             return ResponseEntity.ok().body("Project deleted successfully");
@@ -1622,18 +1783,16 @@ public class ProjectController {
             String b2Path = "audio/projects/" + projectId + "/" + filename;
             String extractedB2Path = "audio/projects/" + projectId + "/extracted/" + filename;
 
-            // Download file in a single assignment
-            final File tempFile = backblazeB2Service.downloadFile(b2Path, baseDir + "/temp/audio_" + filename);
-            if (!tempFile.exists()) {
-                // Try extracted path if first attempt fails
-                final File extractedFile = backblazeB2Service.downloadFile(extractedB2Path, baseDir + "/temp/audio_" + filename);
-                if (!extractedFile.exists()) {
-                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-                }
-                // Use extractedFile as tempFile
-                return serveResource(extractedFile, filename, determineAudioContentType(filename));
+            // Both locations are checked at once (cached), then only the one that exists is downloaded
+            Optional<String> existingPath = backblazeB2Service.findExisting(List.of(b2Path, extractedB2Path));
+            if (existingPath.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
             }
 
+            final File tempFile = backblazeB2Service.downloadFile(existingPath.get(), baseDir + "/temp/audio_" + filename);
+            if (!tempFile.exists()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
             return serveResource(tempFile, filename, determineAudioContentType(filename));
         } catch (Exception e) {
             System.err.println("Error serving audio: " + e.getMessage());
@@ -1642,6 +1801,21 @@ public class ProjectController {
     }
 
     // Helper method to serve Resource
+    // Waveform bodies are small, so they are held in memory and the temp download is removed right away
+    private ResponseEntity<Resource> serveBytes(byte[] data, String filename, String contentType) {
+        Resource resource = new ByteArrayResource(data) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(contentType))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + filename + "\"")
+                .body(resource);
+    }
+
     private ResponseEntity<Resource> serveResource(File file, String filename, String contentType) throws IOException {
         Resource resource = new InputStreamResource(Files.newInputStream(file.toPath())) {
             @Override
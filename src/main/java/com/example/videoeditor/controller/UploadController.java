@@ -0,0 +1,145 @@
+package com.example.videoeditor.controller;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.example.videoeditor.entity.UploadSession;
+import com.example.videoeditor.entity.User;
+import com.example.videoeditor.repository.UserRepository;
+import com.example.videoeditor.security.JwtUtil;
+import com.example.videoeditor.service.ChunkedUploadService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+// Resumable chunked uploads:
+//   POST   /uploads                          {kind, projectId, fileName, title, contentType, fileSize}
+//   PUT    /uploads/{uploadId}/parts/{n}     raw chunk bytes (application/octet-stream)
+//   GET    /uploads/{uploadId}               status and the part numbers already stored
+//   POST   /uploads/{uploadId}/complete      finishes the file and registers the video or project asset
+//   DELETE /uploads/{uploadId}
+@RestController
+@RequestMapping("/uploads")
+public class UploadController {
+    private final ChunkedUploadService chunkedUploadService;
+    private final UserRepository userRepository;
+    private final JwtUtil jwtUtil;
+
+    public UploadController(ChunkedUploadService chunkedUploadService, UserRepository userRepository, JwtUtil jwtUtil) {
+        this.chunkedUploadService = chunkedUploadService;
+        this.userRepository = userRepository;
+        this.jwtUtil = jwtUtil;
+    }
+
+    private User getUserFromToken(String token) {
+        String email = jwtUtil.extractEmail(token.substring(7));
+        return userRepository.findByEmail(email)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    @PostMapping
+    public ResponseEntity<?> startUpload(
+            @RequestHeader("Authorization") String token,
+            @RequestBody Map<String, Object> request) {
+        try {
+            User user = getUserFromToken(token);
+            UploadSession.Kind kind = UploadSession.Kind.valueOf(String.valueOf(request.get("kind")).toUpperCase());
+            Long projectId = request.get("projectId") != null
+                    ? Long.valueOf(request.get("projectId").toString()) : null;
+            if (request.get("fileSize") == null) {
+                return ResponseEntity.badRequest().body("fileSize is required");
+            }
+            long fileSize = Long.parseLong(request.get("fileSize").toString());
+
+            UploadSession session = chunkedUploadService.startUpload(user, kind, projectId,
+                    (String) request.get("fileName"), (String) request.get("title"),
+                    (String) request.get("contentType"), fileSize);
+            return ResponseEntity.status(HttpStatus.CREATED).body(chunkedUploadService.toResponse(session));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid upload request: " + e.getMessage());
+        } catch (B2Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body("Error starting upload: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(e.getMessage());
+        }
+    }
+
+    @PutMapping("/{uploadId}/parts/{partNumber}")
+    public ResponseEntity<?> uploadPart(
+            @RequestHeader("Authorization") String token,
+            @PathVariable String uploadId,
+            @PathVariable int partNumber,
+            InputStream body) {
+        try {
+            User user = getUserFromToken(token);
+            return ResponseEntity.ok(chunkedUploadService.uploadPart(user, uploadId, partNumber, body));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Error reading part: " + e.getMessage());
+        } catch (B2Exception e) {
+            // The client retries the same part
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body("Error storing part: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<?> getUploadStatus(
+            @RequestHeader("Authorization") String token,
+            @PathVariable String uploadId) {
+        try {
+            User user = getUserFromToken(token);
+            return ResponseEntity.ok(chunkedUploadService.getUploadStatus(user, uploadId));
+        } catch (B2Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body("Error listing parts: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<?> completeUpload(
+            @RequestHeader("Authorization") String token,
+            @PathVariable String uploadId) {
+        try {
+            User user = getUserFromToken(token);
+            return ResponseEntity.ok(chunkedUploadService.completeUpload(user, uploadId));
+        } catch (B2Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body("Error completing upload: " + e.getMessage());
+        } catch (JsonProcessingException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error registering upload: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<?> cancelUpload(
+            @RequestHeader("Authorization") String token,
+            @PathVariable String uploadId) {
+        try {
+            User user = getUserFromToken(token);
+            chunkedUploadService.cancelUpload(user, uploadId);
+            return ResponseEntity.ok().build();
+        } catch (B2Exception e) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+                    .body("Error cancelling upload: " + e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(e.getMessage());
+        }
+    }
+}
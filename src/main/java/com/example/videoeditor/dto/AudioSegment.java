@@ -18,35 +18,26 @@ public class AudioSegment {
     private String waveformJsonPath; // Changed from waveformJson
 
     // Keyframes for animatable properties
-    private Map<String, List<Keyframe>> keyframes = new HashMap<>();
+    private Map<String, KeyframeTrack> keyframes = new HashMap<>();
 
-    public Map<String, List<Keyframe>> getKeyframes() {
+    public Map<String, KeyframeTrack> getKeyframes() {
         return keyframes;
     }
 
-    public void setKeyframes(Map<String, List<Keyframe>> keyframes) {
+    public void setKeyframes(Map<String, KeyframeTrack> keyframes) {
         this.keyframes = keyframes;
     }
 
     public void addKeyframe(String property, Keyframe keyframe) {
-        List<Keyframe> propertyKeyframes = keyframes.computeIfAbsent(property, k -> new ArrayList<>());
-        // Remove existing keyframe at the same time (override behavior)
-        propertyKeyframes.removeIf(kf -> Math.abs(kf.getTime() - keyframe.getTime()) < 0.0001);
-        propertyKeyframes.add(keyframe);
-        propertyKeyframes.sort(Comparator.comparingDouble(Keyframe::getTime));
+        // The track replaces a keyframe at the same time and keeps time order
+        keyframes.computeIfAbsent(property, k -> new KeyframeTrack()).add(keyframe);
     }
 
     public void updateKeyframe(String property, Keyframe updatedKeyframe) {
-        List<Keyframe> propertyKeyframes = keyframes.get(property);
+        KeyframeTrack propertyKeyframes = keyframes.get(property);
         if (propertyKeyframes != null) {
-            // Find and update the keyframe at the specified time
-            for (int i = 0; i < propertyKeyframes.size(); i++) {
-                Keyframe existing = propertyKeyframes.get(i);
-                if (Math.abs(existing.getTime() - updatedKeyframe.getTime()) < 0.0001) {
-                    propertyKeyframes.set(i, updatedKeyframe);
-                    return; // Update complete, no need to sort since time didn't change
-                }
-            }
+            // Replaces the keyframe at the same time, if any
+            propertyKeyframes.replace(updatedKeyframe);
         }
         // Optionally throw an exception if no keyframe is found
         // throw new IllegalArgumentException("No keyframe found for property " + property + " at time " + updatedKeyframe.getTime());
@@ -65,9 +56,9 @@ public class AudioSegment {
     }
 
     public void removeKeyframe(String property, double time) {
-        List<Keyframe> propertyKeyframes = keyframes.get(property);
+        KeyframeTrack propertyKeyframes = keyframes.get(property);
         if (propertyKeyframes != null) {
-            propertyKeyframes.removeIf(kf -> Math.abs(kf.getTime() - time) < 0.0001);
+            propertyKeyframes.removeAtTime(time);
         }
     }
 
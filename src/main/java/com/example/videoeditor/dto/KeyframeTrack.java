@@ -0,0 +1,168 @@
+package com.example.videoeditor.dto;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+// Keyframes of one property, always sorted by time. Times and numeric values are mirrored into primitive
+// arrays so rendering reads them without sorting or unboxing; the Keyframe objects are kept for the JSON shape.
+// Serializes as a plain array, and Jackson fills it through add(), so stored timelines load unchanged.
+// A keyframe must not be mutated after it is added; replace it instead.
+public class KeyframeTrack extends AbstractList<Keyframe> implements RandomAccess {
+    // Keyframes closer than this are the same keyframe (matches the editor's 3-decimal times)
+    private static final double TIME_EPSILON = 0.0001;
+
+    private Keyframe[] keyframes = new Keyframe[4];
+    private double[] times = new double[4];
+    private double[] values = new double[4]; // NaN when the value is not a number
+    private int size;
+
+    public KeyframeTrack() {
+    }
+
+    public KeyframeTrack(Collection<? extends Keyframe> keyframes) {
+        for (Keyframe keyframe : keyframes) {
+            add(keyframe);
+        }
+    }
+
+    @Override
+    public Keyframe get(int index) {
+        checkIndex(index);
+        return keyframes[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public double timeAt(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    // NaN when the keyframe's value is not numeric
+    public double valueAt(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    // Inserts in time order; a keyframe at the same time as an existing one replaces it
+    @Override
+    public boolean add(Keyframe keyframe) {
+        if (keyframe == null) {
+            throw new IllegalArgumentException("Keyframe must not be null");
+        }
+        int existing = indexOfTime(keyframe.getTime());
+        if (existing >= 0) {
+            store(existing, keyframe);
+            return true;
+        }
+        int insertAt = insertionPoint(keyframe.getTime());
+        if (size == keyframes.length) {
+            int capacity = size * 2;
+            keyframes = Arrays.copyOf(keyframes, capacity);
+            times = Arrays.copyOf(times, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        System.arraycopy(keyframes, insertAt, keyframes, insertAt + 1, size - insertAt);
+        System.arraycopy(times, insertAt, times, insertAt + 1, size - insertAt);
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        size++;
+        store(insertAt, keyframe);
+        modCount++;
+        return true;
+    }
+
+    // Position is decided by time, so set keeps the order by re-inserting when the time moves
+    @Override
+    public Keyframe set(int index, Keyframe keyframe) {
+        Keyframe previous = get(index);
+        if (Math.abs(previous.getTime() - keyframe.getTime()) < TIME_EPSILON) {
+            store(index, keyframe);
+        } else {
+            remove(index);
+            add(keyframe);
+        }
+        return previous;
+    }
+
+    @Override
+    public Keyframe remove(int index) {
+        Keyframe removed = get(index);
+        int tail = size - index - 1;
+        System.arraycopy(keyframes, index + 1, keyframes, index, tail);
+        System.arraycopy(times, index + 1, times, index, tail);
+        System.arraycopy(values, index + 1, values, index, tail);
+        keyframes[--size] = null;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keyframes, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    // Replaces the keyframe at the same time; false when there is none
+    public boolean replace(Keyframe keyframe) {
+        int index = indexOfTime(keyframe.getTime());
+        if (index < 0) {
+            return false;
+        }
+        store(index, keyframe);
+        return true;
+    }
+
+    public boolean removeAtTime(double time) {
+        int index = indexOfTime(time);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    // Index of the keyframe within TIME_EPSILON of time, or -1
+    public int indexOfTime(double time) {
+        int point = insertionPoint(time);
+        if (point < size && Math.abs(times[point] - time) < TIME_EPSILON) {
+            return point;
+        }
+        if (point > 0 && Math.abs(times[point - 1] - time) < TIME_EPSILON) {
+            return point - 1;
+        }
+        return -1;
+    }
+
+    // First index whose time is >= time
+    private int insertionPoint(double time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void store(int index, Keyframe keyframe) {
+        keyframes[index] = keyframe;
+        times[index] = keyframe.getTime();
+        values[index] = keyframe.getValue() instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.videoeditor.dto;
+
+import java.time.LocalDateTime;
+
+// Read-only view of a project for list screens; never touches the timeline or asset TEXT columns
+public interface ProjectSummary {
+    Long getId();
+
+    String getName();
+
+    String getStatus();
+
+    LocalDateTime getLastModified();
+
+    Integer getWidth();
+
+    Integer getHeight();
+
+    Float getFps();
+
+    String getExportedVideoPath();
+}
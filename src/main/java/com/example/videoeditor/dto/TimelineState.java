@@ -1,6 +1,9 @@
 package com.example.videoeditor.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
@@ -17,6 +20,14 @@ public class TimelineState {
     private Integer canvasHeight;
     private List<Transition> transitions = new ArrayList<>(); // NEW: List of transitions
 
+    // Lookup indexes, rebuilt lazily after any structural change to the lists above
+    @JsonIgnore
+    private transient Map<String, Object> segmentIndex;
+    @JsonIgnore
+    private transient Map<String, List<Filter>> filterIndex;
+    @JsonIgnore
+    private transient Map<String, List<Transition>> transitionIndex;
+
     public TimelineState() {
         this.segments = new ArrayList<>();
         this.metadata = new HashMap<>();
@@ -29,6 +40,7 @@ public class TimelineState {
 
     public void setTransitions(List<Transition> transitions) {
         this.transitions = transitions;
+        invalidateIndexes();
     }
 
     // Getters and setters (unchanged)
@@ -41,6 +53,7 @@ public class TimelineState {
 
     public void setSegments(List<VideoSegment> segments) {
         this.segments = segments;
+        invalidateIndexes();
     }
 
     public List<TextSegment> getTextSegments() {
@@ -52,6 +65,7 @@ public class TimelineState {
 
     public void setTextSegments(List<TextSegment> textSegments) {
         this.textSegments = textSegments;
+        invalidateIndexes();
     }
 
     public Map<String, Object> getMetadata() {
@@ -79,6 +93,7 @@ public class TimelineState {
 
     public void setAudioSegments(List<AudioSegment> audioSegments) {
         this.audioSegments = audioSegments;
+        invalidateIndexes();
     }
 
     public List<ImageSegment> getImageSegments() {
@@ -87,6 +102,7 @@ public class TimelineState {
 
     public void setImageSegments(List<ImageSegment> imageSegments) {
         this.imageSegments = imageSegments;
+        invalidateIndexes();
     }
 
     public List<Filter> getFilters() {
@@ -95,6 +111,7 @@ public class TimelineState {
 
     public void setFilters(List<Filter> filters) {
         this.filters = filters;
+        invalidateIndexes();
     }
 
     public Integer getCanvasWidth() {
@@ -167,4 +184,85 @@ public class TimelineState {
 
         return true;
     }
-}
\ No newline at end of file
+
+    // Drops the lookup indexes; call after adding, removing or re-parenting segments, filters or transitions
+    public void invalidateIndexes() {
+        segmentIndex = null;
+        filterIndex = null;
+        transitionIndex = null;
+    }
+
+    public Object getSegmentById(String segmentId) {
+        if (segmentId == null) {
+            return null;
+        }
+        Object segment = segmentIndex().get(segmentId);
+        if (segment == null) {
+            // Lists may have been appended to without invalidation, rebuild once before giving up
+            invalidateIndexes();
+            segment = segmentIndex().get(segmentId);
+        }
+        return segment;
+    }
+
+    public <T> T getSegmentById(String segmentId, Class<T> type) {
+        Object segment = getSegmentById(segmentId);
+        return type.isInstance(segment) ? type.cast(segment) : null;
+    }
+
+    public boolean containsSegment(String segmentId) {
+        return getSegmentById(segmentId) != null;
+    }
+
+    public List<Filter> getFiltersForSegment(String segmentId) {
+        if (filterIndex == null) {
+            Map<String, List<Filter>> index = new HashMap<>();
+            if (filters != null) {
+                for (Filter filter : filters) {
+                    if (filter.getSegmentId() != null) {
+                        index.computeIfAbsent(filter.getSegmentId(), k -> new ArrayList<>()).add(filter);
+                    }
+                }
+            }
+            filterIndex = index;
+        }
+        return Collections.unmodifiableList(filterIndex.getOrDefault(segmentId, Collections.emptyList()));
+    }
+
+    public List<Transition> getTransitionsForSegment(String segmentId) {
+        if (transitionIndex == null) {
+            Map<String, List<Transition>> index = new HashMap<>();
+            if (transitions != null) {
+                for (Transition transition : transitions) {
+                    if (transition.getSegmentId() != null) {
+                        index.computeIfAbsent(transition.getSegmentId(), k -> new ArrayList<>()).add(transition);
+                    }
+                }
+            }
+            transitionIndex = index;
+        }
+        return Collections.unmodifiableList(transitionIndex.getOrDefault(segmentId, Collections.emptyList()));
+    }
+
+    private Map<String, Object> segmentIndex() {
+        if (segmentIndex == null) {
+            Map<String, Object> index = new HashMap<>();
+            for (VideoSegment segment : getSegments()) {
+                index.put(segment.getId(), segment);
+            }
+            if (imageSegments != null) {
+                for (ImageSegment segment : imageSegments) {
+                    index.put(segment.getId(), segment);
+                }
+            }
+            for (TextSegment segment : getTextSegments()) {
+                index.put(segment.getId(), segment);
+            }
+            for (AudioSegment segment : getAudioSegments()) {
+                index.put(segment.getId(), segment);
+            }
+            segmentIndex = index;
+        }
+        return segmentIndex;
+    }
+}
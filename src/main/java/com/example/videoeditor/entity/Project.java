@@ -1,11 +1,14 @@
 package com.example.videoeditor.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "projects")
+@Table(name = "projects", indexes = {
+        @Index(name = "idx_projects_user_last_modified", columnList = "user_id, last_modified")
+})
 @Data
 public class Project {
     @Id
@@ -22,11 +25,16 @@ public class Project {
     @Column(nullable = false)
     private String status; // DRAFT, PUBLISHED
 
-    @Column(nullable = false)
+    @Column(name = "last_modified", nullable = false)
     private LocalDateTime lastModified;
 
     @Column(columnDefinition = "TEXT")
-    private String timelineState; // JSON string of editing state
+    private String timelineState; // Legacy JSON string of editing state, only read for old rows
+
+    @Lob
+    @JsonIgnore
+    @Column(name = "timeline_state_data", length = 64 * 1024 * 1024)
+    private byte[] timelineStateData; // Compressed editing state, see TimelineStateCodec
 
     private Integer width;
     private Integer height;
@@ -145,6 +153,14 @@ public class Project {
         this.timelineState = timelineState;
     }
 
+    public byte[] getTimelineStateData() {
+        return timelineStateData;
+    }
+
+    public void setTimelineStateData(byte[] timelineStateData) {
+        this.timelineStateData = timelineStateData;
+    }
+
     public String getVideosJson() {
         return videosJson;
     }
@@ -0,0 +1,249 @@
+package com.example.videoeditor.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "project_asset", indexes = {
+        @Index(name = "idx_project_asset_project_type", columnList = "project_id, type")
+})
+public class ProjectAsset {
+
+    public enum Type {
+        VIDEO,
+        IMAGE,
+        AUDIO,
+        EXTRACTED_AUDIO,
+        ELEMENT
+    }
+
+    // Post-upload pipeline, in order; the status is the last stage that finished
+    public enum ProcessingStatus {
+        UPLOADED,
+        PROBED,
+        WAVEFORM,
+        PROXY,
+        READY,
+        FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "project_id", nullable = false)
+    private Project project;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private Type type;
+
+    @Column(nullable = false, length = 1024)
+    private String path; // B2 path of the asset itself
+
+    @Column(length = 512)
+    private String fileName;
+
+    // Derived-asset links
+    @Column(length = 1024)
+    private String audioPath; // VIDEO -> extracted audio
+
+    @Column(length = 1024)
+    private String sourceVideoPath; // EXTRACTED_AUDIO -> source video
+
+    @Column(length = 1024)
+    private String waveformJsonPath; // AUDIO / EXTRACTED_AUDIO -> waveform peaks
+
+    // Null for assets added before the pipeline existed, which are treated as ready
+    @Enumerated(EnumType.STRING)
+    @Column(name = "processing_status", length = 16)
+    private ProcessingStatus processingStatus;
+
+    @Column(length = 1024)
+    private String processingError;
+
+    // Worker currently processing the asset and until when its claim holds; an expired claim may be taken over
+    @Column(name = "ingest_owner", length = 36)
+    private String ingestOwner;
+
+    @Column(name = "ingest_lease_until")
+    private LocalDateTime ingestLeaseUntil;
+
+    @Column(name = "duration_seconds")
+    private Double durationSeconds;
+
+    // IMAGE: source size from the header, and the canvas-bounded rendition exports decode instead
+    private Integer width;
+
+    private Integer height;
+
+    @Column(length = 1024)
+    private String renditionPath;
+
+    private Integer renditionWidth;
+
+    private Integer renditionHeight;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Project getProject() {
+        return project;
+    }
+
+    public void setProject(Project project) {
+        this.project = project;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getAudioPath() {
+        return audioPath;
+    }
+
+    public void setAudioPath(String audioPath) {
+        this.audioPath = audioPath;
+    }
+
+    public String getSourceVideoPath() {
+        return sourceVideoPath;
+    }
+
+    public void setSourceVideoPath(String sourceVideoPath) {
+        this.sourceVideoPath = sourceVideoPath;
+    }
+
+    public String getWaveformJsonPath() {
+        return waveformJsonPath;
+    }
+
+    public void setWaveformJsonPath(String waveformJsonPath) {
+        this.waveformJsonPath = waveformJsonPath;
+    }
+
+    public ProcessingStatus getProcessingStatus() {
+        return processingStatus;
+    }
+
+    public void setProcessingStatus(ProcessingStatus processingStatus) {
+        this.processingStatus = processingStatus;
+    }
+
+    public String getProcessingError() {
+        return processingError;
+    }
+
+    public void setProcessingError(String processingError) {
+        this.processingError = processingError;
+    }
+
+    public String getIngestOwner() {
+        return ingestOwner;
+    }
+
+    public void setIngestOwner(String ingestOwner) {
+        this.ingestOwner = ingestOwner;
+    }
+
+    public LocalDateTime getIngestLeaseUntil() {
+        return ingestLeaseUntil;
+    }
+
+    public void setIngestLeaseUntil(LocalDateTime ingestLeaseUntil) {
+        this.ingestLeaseUntil = ingestLeaseUntil;
+    }
+
+    public Double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(Double durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getRenditionPath() {
+        return renditionPath;
+    }
+
+    public void setRenditionPath(String renditionPath) {
+        this.renditionPath = renditionPath;
+    }
+
+    public Integer getRenditionWidth() {
+        return renditionWidth;
+    }
+
+    public void setRenditionWidth(Integer renditionWidth) {
+        this.renditionWidth = renditionWidth;
+    }
+
+    public Integer getRenditionHeight() {
+        return renditionHeight;
+    }
+
+    public void setRenditionHeight(Integer renditionHeight) {
+        this.renditionHeight = renditionHeight;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
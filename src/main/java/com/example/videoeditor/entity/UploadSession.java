@@ -0,0 +1,198 @@
+package com.example.videoeditor.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// One resumable upload streamed into a B2 large file. The uploaded parts themselves are listed from B2.
+@Entity
+@Table(name = "upload_sessions", indexes = {
+        @Index(name = "idx_upload_sessions_status_created", columnList = "status, created_at")
+})
+public class UploadSession {
+
+    public enum Kind {
+        VIDEO, // user video library
+        AUDIO, // project audio
+        IMAGE  // project image
+    }
+
+    public enum Status {
+        ACTIVE,
+        COMPLETED,
+        CANCELLED,
+        FAILED // finished in B2 but could not be registered; the file was deleted
+    }
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @ManyToOne
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(nullable = false, length = 512)
+    private String fileName;
+
+    private String title;
+
+    @Column(nullable = false)
+    private String contentType;
+
+    @Column(nullable = false, length = 1024)
+    private String b2Path;
+
+    @Column(nullable = false, length = 256)
+    private String b2FileId;
+
+    @Column(nullable = false)
+    private long fileSize;
+
+    @Column(nullable = false)
+    private long partSize;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+
+    // Parts are partSize bytes except the last one
+    public int getPartCount() {
+        return (int) ((fileSize + partSize - 1) / partSize);
+    }
+
+    public long getPartLength(int partNumber) {
+        long offset = (partNumber - 1) * partSize;
+        return Math.min(partSize, fileSize - offset);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(Long projectId) {
+        this.projectId = projectId;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public void setKind(Kind kind) {
+        this.kind = kind;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getB2Path() {
+        return b2Path;
+    }
+
+    public void setB2Path(String b2Path) {
+        this.b2Path = b2Path;
+    }
+
+    public String getB2FileId() {
+        return b2FileId;
+    }
+
+    public void setB2FileId(String b2FileId) {
+        this.b2FileId = b2FileId;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(long partSize) {
+        this.partSize = partSize;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+}
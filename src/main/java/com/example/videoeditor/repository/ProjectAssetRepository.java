@@ -0,0 +1,98 @@
+package com.example.videoeditor.repository;
+
+import com.example.videoeditor.entity.ProjectAsset;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProjectAssetRepository extends JpaRepository<ProjectAsset, Long> {
+    @Query("SELECT a FROM ProjectAsset a WHERE a.project.id = :projectId AND a.type = :type ORDER BY a.id")
+    List<ProjectAsset> findByProjectIdAndType(@Param("projectId") Long projectId, @Param("type") ProjectAsset.Type type);
+
+    @Query("SELECT a FROM ProjectAsset a WHERE a.project.id IN :projectIds ORDER BY a.id")
+    List<ProjectAsset> findByProjectIdIn(@Param("projectIds") Collection<Long> projectIds);
+
+    @Query("SELECT a FROM ProjectAsset a WHERE a.project.id = :projectId AND a.type = :type AND a.path = :path")
+    List<ProjectAsset> findByProjectIdAndTypeAndPath(@Param("projectId") Long projectId,
+                                                       @Param("type") ProjectAsset.Type type,
+                                                       @Param("path") String path);
+
+    @Query("SELECT a FROM ProjectAsset a WHERE a.type = :type AND a.path IN :paths")
+    List<ProjectAsset> findByTypeAndPathIn(@Param("type") ProjectAsset.Type type,
+                                           @Param("paths") Collection<String> paths);
+
+    @Query("SELECT COUNT(a) > 0 FROM ProjectAsset a WHERE a.project.id = :projectId")
+    boolean existsByProjectId(@Param("projectId") Long projectId);
+
+    // Unfinished assets nobody holds a live claim on
+    @Query("SELECT a FROM ProjectAsset a WHERE a.processingStatus IN :statuses " +
+            "AND (a.ingestLeaseUntil IS NULL OR a.ingestLeaseUntil < :now) ORDER BY a.id")
+    List<ProjectAsset> findUnclaimedByProcessingStatusIn(@Param("statuses") Collection<ProjectAsset.ProcessingStatus> statuses,
+                                                         @Param("now") LocalDateTime now);
+
+    @Query("SELECT a.project.id FROM ProjectAsset a WHERE a.id = :id")
+    Long findProjectIdById(@Param("id") Long id);
+
+    // Takes the asset for one worker; 0 when it moved on or another worker holds a live claim
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProjectAsset a SET a.ingestOwner = :owner, a.ingestLeaseUntil = :leaseUntil " +
+            "WHERE a.id = :id AND a.processingStatus = :status " +
+            "AND (a.ingestLeaseUntil IS NULL OR a.ingestLeaseUntil < :now)")
+    int claimProcessing(@Param("id") Long id,
+                        @Param("status") ProjectAsset.ProcessingStatus status,
+                        @Param("owner") String owner,
+                        @Param("leaseUntil") LocalDateTime leaseUntil,
+                        @Param("now") LocalDateTime now);
+
+    // Records a finished stage and extends the claim; 0 when the row is gone or the claim was taken over
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProjectAsset a SET a.processingStatus = :status, a.processingError = :error, " +
+            "a.ingestLeaseUntil = :leaseUntil WHERE a.id = :id AND a.ingestOwner = :owner")
+    int advanceProcessing(@Param("id") Long id,
+                          @Param("owner") String owner,
+                          @Param("status") ProjectAsset.ProcessingStatus status,
+                          @Param("error") String error,
+                          @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProjectAsset a SET a.ingestOwner = NULL, a.ingestLeaseUntil = NULL WHERE a.id = :id AND a.ingestOwner = :owner")
+    int releaseClaim(@Param("id") Long id, @Param("owner") String owner);
+
+    // Pipeline updates touch only their own columns so they never overwrite a concurrent edit or revive a deleted row
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProjectAsset a SET a.durationSeconds = :duration WHERE a.id = :id")
+    int updateDuration(@Param("id") Long id, @Param("duration") Double duration);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProjectAsset a SET a.waveformJsonPath = :waveformJsonPath WHERE a.id = :id")
+    int updateWaveformJsonPath(@Param("id") Long id, @Param("waveformJsonPath") String waveformJsonPath);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProjectAsset a SET a.width = :width, a.height = :height WHERE a.id = :id")
+    int updateDimensions(@Param("id") Long id, @Param("width") Integer width, @Param("height") Integer height);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProjectAsset a SET a.renditionPath = :renditionPath, a.renditionWidth = :width, a.renditionHeight = :height WHERE a.id = :id")
+    int updateRendition(@Param("id") Long id, @Param("renditionPath") String renditionPath,
+                        @Param("width") Integer width, @Param("height") Integer height);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ProjectAsset a WHERE a.project.id = :projectId")
+    void deleteByProjectId(@Param("projectId") Long projectId);
+}
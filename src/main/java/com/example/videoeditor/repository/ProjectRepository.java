@@ -1,12 +1,34 @@
 package com.example.videoeditor.repository;
 
+import com.example.videoeditor.dto.ProjectSummary;
 import com.example.videoeditor.entity.Project;
 import com.example.videoeditor.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface ProjectRepository extends JpaRepository<Project, Long> {
     List<Project> findByUserOrderByLastModifiedDesc(User user);
     Project findByIdAndUser(Long id, User user);
-}
\ No newline at end of file
+
+    // First page of the project picker, newest first
+    @Query("SELECT p.id AS id, p.name AS name, p.status AS status, p.lastModified AS lastModified, " +
+            "p.width AS width, p.height AS height, p.fps AS fps, p.exportedVideoPath AS exportedVideoPath " +
+            "FROM Project p WHERE p.user = :user ORDER BY p.lastModified DESC, p.id DESC")
+    List<ProjectSummary> findSummariesByUser(@Param("user") User user, Pageable pageable);
+
+    // Keyset page: everything strictly after the (lastModified, id) cursor in newest-first order
+    @Query("SELECT p.id AS id, p.name AS name, p.status AS status, p.lastModified AS lastModified, " +
+            "p.width AS width, p.height AS height, p.fps AS fps, p.exportedVideoPath AS exportedVideoPath " +
+            "FROM Project p WHERE p.user = :user AND " +
+            "(p.lastModified < :lastModified OR (p.lastModified = :lastModified AND p.id < :id)) " +
+            "ORDER BY p.lastModified DESC, p.id DESC")
+    List<ProjectSummary> findSummariesByUserBefore(@Param("user") User user,
+                                                   @Param("lastModified") LocalDateTime lastModified,
+                                                   @Param("id") Long id,
+                                                   Pageable pageable);
+}
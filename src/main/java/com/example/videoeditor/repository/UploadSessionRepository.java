@@ -0,0 +1,17 @@
+package com.example.videoeditor.repository;
+
+import com.example.videoeditor.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    @Query("SELECT s FROM UploadSession s WHERE s.status = :status AND s.createdAt < :before")
+    List<UploadSession> findByStatusCreatedBefore(@Param("status") UploadSession.Status status,
+                                                  @Param("before") LocalDateTime before);
+}
@@ -0,0 +1,334 @@
+package com.example.videoeditor.service;
+
+import com.example.videoeditor.dto.Segment;
+import com.example.videoeditor.dto.TextSegment;
+import com.example.videoeditor.dto.TimelineState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Burns static captions in with one libass `ass` filter instead of one looped PNG input and overlay each.
+// Only text the PNG path would draw identically qualifies: no keyframes, transitions, background box or
+// background border, and a font the registry has a file for. Geometry mirrors generateTextPng so a
+// caption lands where its PNG would have.
+@Component
+public class AssSubtitleRenderer {
+    private static final double BASE_FONT_SIZE = 24.0;
+    private static final double LINE_SPACING = 1.2;
+
+    private final FontRegistry fontRegistry;
+
+    @Value("${app.text.ass-enabled:true}")
+    private boolean enabled;
+
+    public AssSubtitleRenderer(FontRegistry fontRegistry) {
+        this.fontRegistry = fontRegistry;
+    }
+
+    // Ids of the text segments to burn in as subtitles. The filter runs after every overlay, so a caption
+    // is only taken when nothing left on the overlay path would be stacked above it while it is visible.
+    public Set<String> selectSegments(TimelineState timelineState) {
+        Set<String> selected = new LinkedHashSet<>();
+        if (!enabled) {
+            return selected;
+        }
+        for (TextSegment ts : timelineState.getTextSegments()) {
+            if (isExpressible(timelineState, ts)) {
+                selected.add(ts.getId());
+            }
+        }
+        if (selected.isEmpty()) {
+            return selected;
+        }
+
+        // Same order the overlay loop uses: videos, images, then text, stable-sorted by layer
+        List<Segment> visual = new ArrayList<>();
+        visual.addAll(timelineState.getSegments());
+        visual.addAll(timelineState.getImageSegments());
+        visual.addAll(timelineState.getTextSegments());
+        visual.sort(Comparator.comparingInt(segment -> layerOf(segment)));
+
+        // Dropping a caption back to the overlay path can put it above another one, so repeat until stable
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < visual.size(); i++) {
+                Segment candidate = visual.get(i);
+                if (!selected.contains(candidate.getId())) {
+                    continue;
+                }
+                for (int j = i + 1; j < visual.size(); j++) {
+                    Segment above = visual.get(j);
+                    if (!selected.contains(above.getId()) && overlaps(candidate, above)) {
+                        selected.remove(candidate.getId());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return selected;
+    }
+
+    private boolean isExpressible(TimelineState timelineState, TextSegment ts) {
+        String text = ts.getText();
+        // Braces and backslashes are override syntax in ASS
+        if (text == null || text.trim().isEmpty() || text.indexOf('{') >= 0 || text.indexOf('}') >= 0 || text.indexOf('\\') >= 0) {
+            return false;
+        }
+        if (ts.getKeyframes() != null && ts.getKeyframes().values().stream().anyMatch(list -> list != null && !list.isEmpty())) {
+            return false;
+        }
+        if (!timelineState.getTransitionsForSegment(ts.getId()).isEmpty()) {
+            return false;
+        }
+        if (ts.getScale() != null && ts.getScale() <= 0) {
+            return false;
+        }
+        double backgroundOpacity = ts.getBackgroundOpacity() != null ? ts.getBackgroundOpacity() : 1.0;
+        if (backgroundOpacity > 0 && decode(ts.getBackgroundColor()) != null) {
+            return false;
+        }
+        if (ts.getBackgroundBorderWidth() != null && ts.getBackgroundBorderWidth() > 0
+                && decode(ts.getBackgroundBorderColor()) != null) {
+            return false;
+        }
+        // Semi-transparent text with an outline is faded as one image on the PNG path; libass fades each layer
+        double opacity = ts.getOpacity() != null ? ts.getOpacity() : 1.0;
+        if (opacity < 1.0 && hasTextBorder(ts)) {
+            return false;
+        }
+        return fontRegistry.getFontFile(resolvedFamily(ts)) != null;
+    }
+
+    public File writeScript(TimelineState timelineState, Set<String> segmentIds, int canvasWidth, int canvasHeight,
+                            File dir) throws IOException {
+        List<TextSegment> segments = new ArrayList<>();
+        for (TextSegment ts : timelineState.getTextSegments()) {
+            if (segmentIds.contains(ts.getId())) {
+                segments.add(ts);
+            }
+        }
+        segments.sort(Comparator.comparingInt(ts -> layerOf(ts)));
+
+        StringBuilder script = new StringBuilder();
+        script.append("[Script Info]\n")
+                .append("ScriptType: v4.00+\n")
+                .append("PlayResX: ").append(canvasWidth).append("\n")
+                .append("PlayResY: ").append(canvasHeight).append("\n")
+                .append("WrapStyle: 2\n")
+                .append("ScaledBorderAndShadow: yes\n\n");
+        script.append("[V4+ Styles]\n")
+                .append("Format: Name, Fontname, Fontsize, PrimaryColour, SecondaryColour, OutlineColour, BackColour, ")
+                .append("Bold, Italic, Underline, StrikeOut, ScaleX, ScaleY, Spacing, Angle, BorderStyle, Outline, ")
+                .append("Shadow, Alignment, MarginL, MarginR, MarginV, Encoding\n")
+                .append("Style: Default,Arial,24,&H00FFFFFF,&H00FFFFFF,&H00000000,&H00000000,0,0,0,0,100,100,0,0,1,0,0,7,0,0,0,1\n\n");
+        script.append("[Events]\n")
+                .append("Format: Layer, Start, End, Style, Name, MarginL, MarginR, MarginV, Effect, Text\n");
+
+        // ASS layer is the stacking position, so equal timeline layers keep their overlay order
+        for (int layer = 0; layer < segments.size(); layer++) {
+            appendEvents(script, segments.get(layer), layer, canvasWidth, canvasHeight);
+        }
+
+        File scriptFile = new File(dir, "captions_" + System.currentTimeMillis() + ".ass");
+        Files.writeString(scriptFile.toPath(), script.toString(), StandardCharsets.UTF_8);
+        return scriptFile;
+    }
+
+    // One positioned event per line: the PNG path spaces lines at 1.2x the font size, which ASS can't express
+    private void appendEvents(StringBuilder script, TextSegment ts, int layer, int canvasWidth, int canvasHeight) {
+        double resolutionMultiplier = canvasWidth >= 3840 ? 1.5 : 2.0;
+        double scale = ts.getScale() != null ? ts.getScale() : 1.0;
+        double pngFontSize = BASE_FONT_SIZE * scale * resolutionMultiplier;
+        // PNG pixels -> canvas pixels, as the scale filter on the overlay path does
+        double toCanvas = 1.0 / resolutionMultiplier;
+
+        Font font = fontRegistry.getFont(ts.getFontFamily(), (float) pngFontSize);
+        BufferedImage measureImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = measureImage.createGraphics();
+        g2d.setFont(font);
+        FontMetrics fm = g2d.getFontMetrics();
+        String[] lines = ts.getText().split("\n");
+        int lineHeight = (int) (pngFontSize * LINE_SPACING);
+        int maxTextWidth = 0;
+        int[] lineWidths = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            lineWidths[i] = fm.stringWidth(lines[i]);
+            maxTextWidth = Math.max(maxTextWidth, lineWidths[i]);
+        }
+        int ascent = fm.getAscent();
+        int descent = fm.getDescent();
+        g2d.dispose();
+        measureImage.flush();
+
+        int textBlockHeight = lines.length == 1 ? ascent + descent : lines.length * lineHeight;
+        int textBorderWidth = hasTextBorder(ts) ? (int) (ts.getTextBorderWidth() * scale * resolutionMultiplier) : 0;
+        int bgWidth = (int) ((ts.getBackgroundW() != null ? ts.getBackgroundW() : 0) * scale * resolutionMultiplier);
+        int bgHeight = (int) ((ts.getBackgroundH() != null ? ts.getBackgroundH() : 0) * scale * resolutionMultiplier);
+        int contentWidth = maxTextWidth + bgWidth + 2 * textBorderWidth;
+        int contentHeight = textBlockHeight + bgHeight + 2 * textBorderWidth;
+        int totalWidth = contentWidth + 2 * textBorderWidth;
+        int totalHeight = contentHeight + 2 * textBorderWidth;
+
+        // Top-left of the PNG on the canvas: the overlay centres it on (W/2 + positionX, H/2 + positionY)
+        double imageLeft = canvasWidth / 2.0 + (ts.getPositionX() != null ? ts.getPositionX() : 0) - totalWidth * toCanvas / 2;
+        double imageTop = canvasHeight / 2.0 + (ts.getPositionY() != null ? ts.getPositionY() : 0) - totalHeight * toCanvas / 2;
+
+        // libass sizes fonts by ascent + descent rather than the em square
+        double assFontSize = (ascent + descent) * toCanvas;
+        String alignment = ts.getAlignment() != null ? ts.getAlignment().toLowerCase() : "center";
+        double opacity = ts.getOpacity() != null ? ts.getOpacity() : 1.0;
+        Color fontColor = decode(ts.getFontColor());
+        if (fontColor == null) {
+            fontColor = Color.WHITE;
+        }
+
+        StringBuilder style = new StringBuilder();
+        style.append("\\fn").append(resolvedFamily(ts))
+                .append("\\fs").append(format(assFontSize))
+                .append("\\1c").append(assColor(fontColor))
+                .append("\\1a").append(assAlpha(opacity))
+                .append("\\shad0");
+        if (textBorderWidth > 0) {
+            double borderOpacity = ts.getTextBorderOpacity() != null ? ts.getTextBorderOpacity() : 1.0;
+            // Java2D strokes are centred on the glyph outline, libass borders grow outward only
+            style.append("\\bord").append(format(textBorderWidth * toCanvas / 2))
+                    .append("\\3c").append(assColor(decode(ts.getTextBorderColor())))
+                    .append("\\3a").append(assAlpha(borderOpacity * opacity));
+        } else {
+            style.append("\\bord0");
+        }
+
+        String start = assTime(ts.getTimelineStartTime());
+        String end = assTime(ts.getTimelineEndTime());
+        int textTop = textBorderWidth + (contentHeight - textBlockHeight) / 2;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].isEmpty()) {
+                continue;
+            }
+            int x;
+            if (alignment.equals("left")) {
+                x = textBorderWidth;
+            } else if (alignment.equals("right")) {
+                x = totalWidth - lineWidths[i] - textBorderWidth;
+            } else {
+                x = (totalWidth - lineWidths[i]) / 2;
+            }
+            // Top of the line box = baseline - ascent
+            int top = textTop + i * lineHeight;
+            script.append("Dialogue: ").append(layer).append(',').append(start).append(',').append(end)
+                    .append(",Default,,0,0,0,,{\\an7\\q2\\pos(")
+                    .append(format(imageLeft + x * toCanvas)).append(',')
+                    .append(format(imageTop + top * toCanvas)).append(')')
+                    .append(style).append('}')
+                    .append(lines[i]).append('\n');
+        }
+    }
+
+    // Filter for the filter graph. libass takes a single fontsdir, so every caption font is staged into one
+    // directory next to the script (hard-linked where possible). The staged files and then the directory are
+    // appended to tempFiles, in the order they can be deleted.
+    public String filter(TimelineState timelineState, Set<String> segmentIds, File script, List<File> tempFiles)
+            throws IOException {
+        Set<File> fontFiles = new LinkedHashSet<>();
+        for (TextSegment ts : timelineState.getTextSegments()) {
+            if (segmentIds.contains(ts.getId())) {
+                File fontFile = fontRegistry.getFontFile(resolvedFamily(ts));
+                if (fontFile != null) {
+                    fontFiles.add(fontFile);
+                }
+            }
+        }
+
+        String scriptName = script.getName();
+        File fontsDir = new File(script.getParentFile(), scriptName.substring(0, scriptName.lastIndexOf('.')) + "_fonts");
+        Files.createDirectories(fontsDir.toPath());
+        List<File> staged = new ArrayList<>();
+        int index = 0;
+        for (File fontFile : fontFiles) {
+            // Prefixed because two families may ship files with the same name; libass matches on the family inside
+            Path target = fontsDir.toPath().resolve((index++) + "_" + fontFile.getName());
+            try {
+                Files.createLink(target, fontFile.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(fontFile.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            staged.add(target.toFile());
+        }
+        tempFiles.addAll(staged);
+        tempFiles.add(fontsDir);
+
+        return "ass=filename=" + escapeFilterPath(script) + ":fontsdir=" + escapeFilterPath(fontsDir);
+    }
+
+    private String resolvedFamily(TextSegment ts) {
+        return fontRegistry.getFont(ts.getFontFamily(), 1f).getFamily(Locale.ROOT);
+    }
+
+    private static boolean hasTextBorder(TextSegment ts) {
+        return ts.getTextBorderWidth() != null && ts.getTextBorderWidth() > 0 && decode(ts.getTextBorderColor()) != null;
+    }
+
+    private static boolean overlaps(Segment a, Segment b) {
+        return a.getTimelineStartTime() < b.getTimelineEndTime() && b.getTimelineStartTime() < a.getTimelineEndTime();
+    }
+
+    private static int layerOf(Segment segment) {
+        return segment.getLayer() != null ? segment.getLayer() : 0;
+    }
+
+    // Same parsing as generateTextPng: anything Color.decode rejects, including "transparent", is no colour
+    private static Color decode(String color) {
+        if (color == null) {
+            return null;
+        }
+        try {
+            return Color.decode(color);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String assColor(Color color) {
+        return String.format("&H%02X%02X%02X&", color.getBlue(), color.getGreen(), color.getRed());
+    }
+
+    // ASS alpha is inverted: 00 is opaque
+    private static String assAlpha(double opacity) {
+        int alpha = (int) Math.round(255 * (1.0 - Math.max(0.0, Math.min(1.0, opacity))));
+        return String.format("&H%02X&", alpha);
+    }
+
+    private static String assTime(double seconds) {
+        long centis = Math.round(Math.max(0.0, seconds) * 100);
+        return String.format("%d:%02d:%02d.%02d", centis / 360000, (centis / 6000) % 60, (centis / 100) % 60, centis % 100);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    // Quoted for the filter graph, with ':' escaped for the option parser (Windows drive letters)
+    private static String escapeFilterPath(File file) {
+        String path = file.getAbsolutePath().replace('\\', '/').replace(":", "\\:");
+        return "'" + path.replace("'", "'\\''") + "'";
+    }
+}
@@ -3,9 +3,16 @@ package com.example.videoeditor.service;
 import com.backblaze.b2.client.B2StorageClient;
 import com.backblaze.b2.client.B2StorageClientFactory;
 import com.backblaze.b2.client.contentHandlers.B2ContentFileWriter;
+import com.backblaze.b2.client.contentSources.B2ByteArrayContentSource;
+import com.backblaze.b2.client.contentSources.B2ByteRange;
 import com.backblaze.b2.client.contentSources.B2FileContentSource;
 import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2NotFoundException;
 import com.backblaze.b2.client.structures.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,22 +21,75 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Profile("!test") // Only activate this service in non-test profiles
 public class BackblazeB2Service {
     private static final Logger logger = LoggerFactory.getLogger(BackblazeB2Service.class);
-    private static final long LARGE_FILE_THRESHOLD = 200 * 1024 * 1024; // 200 MB
     private static final int BUFFER_SIZE = 8192; // 8KB buffer for I/O
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024; // B2 minimum for all but the last part
+    private static final int MAX_PARTS = 10000;
 
     private B2StorageClient b2Client;
     private String bucketId; // Store the bucket ID
-    private final ExecutorService executorService;
+
+    // Upload engine: every part of every large upload runs on partExecutor (global limit),
+    // and a single file never has more than perFileConcurrency parts in flight
+    private final long largeFileThreshold;
+    private final long partSize;
+    private final int perFileConcurrency;
+    private final int maxRetries;
+    private final long retryBaseDelayMs;
+    private final ExecutorService partExecutor;
+
+    // Ranged downloads: objects above rangedDownloadThreshold are fetched as concurrent byte ranges
+    private final long rangedDownloadThreshold;
+    private final long rangeSize;
+    private final int perFileDownloadConcurrency;
+    private final ExecutorService rangeExecutor;
+
+    // Deletes and existence lookups run on separate bounded pools, so a large directory delete never
+    // queues the lookups that requests wait on; found files are cached briefly by getFileInfoByName
+    private static final int MAX_CACHED_FILE_INFOS = 10000;
+    private final long fileInfoTtlNanos;
+    private final ExecutorService lookupExecutor;
+    private final ExecutorService deleteExecutor;
+    private final Map<String, CachedFileInfo> fileInfoCache = new ConcurrentHashMap<>();
+
+    private record CachedFileInfo(B2FileVersion fileVersion, long expiresAtNanos) {
+    }
+
+    private final Timer uploadTimer;
+    private final DistributionSummary uploadThroughput;
+    private final Counter partRetries;
+    private final DistributionSummary downloadThroughput;
+    private final Counter rangeRetries;
 
     @Value("${B2_APPLICATION_KEY_ID}")
     private String applicationKeyId;
@@ -40,8 +100,75 @@ public class BackblazeB2Service {
     @Value("${B2_BUCKET_NAME}")
     private String bucketName;
 
-    public BackblazeB2Service() {
-        this.executorService = Executors.newFixedThreadPool(4); // For large file uploads
+    public BackblazeB2Service(
+            MeterRegistry meterRegistry,
+            @Value("${b2.upload.large-file-threshold-bytes:104857600}") long largeFileThreshold,
+            @Value("${b2.upload.part-size-bytes:33554432}") long partSize,
+            @Value("${b2.upload.per-file-concurrency:8}") int perFileConcurrency,
+            @Value("${b2.upload.global-concurrency:16}") int globalConcurrency,
+            @Value("${b2.upload.max-retries:5}") int maxRetries,
+            @Value("${b2.upload.retry-base-delay-ms:500}") long retryBaseDelayMs,
+            @Value("${b2.download.ranged-threshold-bytes:268435456}") long rangedDownloadThreshold,
+            @Value("${b2.download.range-size-bytes:67108864}") long rangeSize,
+            @Value("${b2.download.per-file-concurrency:8}") int perFileDownloadConcurrency,
+            @Value("${b2.download.global-concurrency:16}") int globalDownloadConcurrency,
+            @Value("${b2.metadata.concurrency:16}") int metadataConcurrency,
+            @Value("${b2.delete.concurrency:16}") int deleteConcurrency,
+            @Value("${b2.metadata.cache-ttl-ms:30000}") long fileInfoTtlMs) {
+        this.largeFileThreshold = largeFileThreshold;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize);
+        this.perFileConcurrency = Math.max(1, perFileConcurrency);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBaseDelayMs = retryBaseDelayMs;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.partExecutor = Executors.newFixedThreadPool(Math.max(1, globalConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "b2-upload-part-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.rangedDownloadThreshold = rangedDownloadThreshold;
+        this.rangeSize = Math.max(MIN_PART_SIZE, rangeSize);
+        this.perFileDownloadConcurrency = Math.max(1, perFileDownloadConcurrency);
+        AtomicInteger rangeThreadCount = new AtomicInteger();
+        this.rangeExecutor = Executors.newFixedThreadPool(Math.max(1, globalDownloadConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "b2-download-range-" + rangeThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.fileInfoTtlNanos = TimeUnit.MILLISECONDS.toNanos(fileInfoTtlMs);
+        AtomicInteger lookupThreadCount = new AtomicInteger();
+        this.lookupExecutor = Executors.newFixedThreadPool(Math.max(1, metadataConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "b2-lookup-" + lookupThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger deleteThreadCount = new AtomicInteger();
+        this.deleteExecutor = Executors.newFixedThreadPool(Math.max(1, deleteConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "b2-delete-" + deleteThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.uploadTimer = Timer.builder("b2.upload.duration").register(meterRegistry);
+        this.uploadThroughput = DistributionSummary.builder("b2.upload.throughput")
+                .baseUnit("bytes_per_second")
+                .register(meterRegistry);
+        this.partRetries = Counter.builder("b2.upload.part.retries").register(meterRegistry);
+        this.downloadThroughput = DistributionSummary.builder("b2.download.throughput")
+                .baseUnit("bytes_per_second")
+                .register(meterRegistry);
+        this.rangeRetries = Counter.builder("b2.download.range.retries").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partExecutor.shutdownNow();
+        rangeExecutor.shutdownNow();
+        lookupExecutor.shutdownNow();
+        deleteExecutor.shutdownNow();
     }
 
     @PostConstruct
@@ -94,6 +221,15 @@ public class BackblazeB2Service {
                 throw new IOException("Failed to create parent directories for: " + destinationPath);
             }
 
+            if (rangedDownloadThreshold > 0) {
+                // A missing file falls through so downloadByName reports it as before
+                B2FileVersion info = getFileInfo(b2Path).orElse(null);
+                if (info != null && info.getContentLength() > rangedDownloadThreshold) {
+                    downloadRanged(b2Path, info, destinationFile);
+                    return destinationFile;
+                }
+            }
+
             B2ContentFileWriter writer = B2ContentFileWriter.builder(destinationFile).build();
             b2Client.downloadByName(bucketName, b2Path, writer);
 
@@ -105,6 +241,122 @@ public class BackblazeB2Service {
         }
     }
 
+    // Fetches byte ranges concurrently into a preallocated file with positional writes, then checks the SHA-1
+    private void downloadRanged(String b2Path, B2FileVersion info, File destinationFile) throws IOException, B2Exception {
+        long length = info.getContentLength();
+        int rangeCount = (int) ((length + rangeSize - 1) / rangeSize);
+        long startNanos = System.nanoTime();
+        AtomicInteger retries = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(perFileDownloadConcurrency);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Future<?>> futures = new ArrayList<>(rangeCount);
+
+        try (RandomAccessFile preallocated = new RandomAccessFile(destinationFile, "rw")) {
+            preallocated.setLength(length);
+        }
+
+        try (FileChannel channel = FileChannel.open(destinationFile.toPath(), StandardOpenOption.WRITE)) {
+            for (int i = 0; i < rangeCount && failure.get() == null; i++) {
+                long start = i * rangeSize;
+                long end = Math.min(length, start + rangeSize) - 1; // inclusive
+
+                inFlight.acquire();
+                futures.add(rangeExecutor.submit(() -> {
+                    try {
+                        B2DownloadByNameRequest request = B2DownloadByNameRequest.builder(bucketName, b2Path)
+                                .setRange(B2ByteRange.between(start, end))
+                                .build();
+                        // A retried range simply overwrites the same bytes
+                        withRetry("range " + start + "-" + end + " of " + b2Path, () -> {
+                            b2Client.downloadByName(request, (headers, in) -> writeRange(channel, in, start, end));
+                            return null;
+                        }, retries, rangeRetries);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            Files.deleteIfExists(destinationFile.toPath());
+            throw new InterruptedIOException("Download interrupted: " + b2Path);
+        }
+
+        Exception error = failure.get();
+        if (error != null) {
+            Files.deleteIfExists(destinationFile.toPath());
+            if (error instanceof B2Exception b2Exception) throw b2Exception;
+            if (error instanceof IOException ioException) throw ioException;
+            throw new IOException("Ranged download failed: " + b2Path, error);
+        }
+
+        verifySha1(b2Path, info, destinationFile);
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        double seconds = Math.max(elapsedNanos / 1e9, 1e-3);
+        downloadThroughput.record(length / seconds);
+        logger.info("Downloaded file from B2: {}/{} ({} MB, {} ranges, {} retries) in {} ms, {} MB/s",
+                bucketName, b2Path, String.format("%.1f", length / 1048576.0), rangeCount, retries.get(),
+                elapsedNanos / 1_000_000, String.format("%.1f", length / 1048576.0 / seconds));
+    }
+
+    private static void writeRange(FileChannel channel, InputStream in, long start, long end) throws IOException {
+        byte[] buffer = new byte[256 * 1024];
+        long position = start;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+            while (chunk.hasRemaining()) {
+                position += channel.write(chunk, position);
+            }
+        }
+        if (position != end + 1) {
+            throw new EOFException("Range " + start + "-" + end + " ended early at " + position);
+        }
+    }
+
+    // Small files carry contentSha1; large files only have it when the uploader set large_file_sha1
+    private static void verifySha1(String b2Path, B2FileVersion info, File file) throws IOException {
+        String expected = info.getContentSha1();
+        if ((expected == null || expected.equals("none")) && info.getFileInfo() != null) {
+            expected = info.getFileInfo().get("large_file_sha1");
+        }
+        if (expected != null && expected.startsWith("unverified:")) {
+            expected = expected.substring("unverified:".length());
+        }
+        if (expected == null || expected.equals("none")) {
+            logger.debug("No SHA-1 recorded for {}, skipping verification", b2Path);
+            return;
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1024 * 1024)) {
+            byte[] buffer = new byte[1024 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (!actual.equalsIgnoreCase(expected)) {
+            Files.deleteIfExists(file.toPath());
+            throw new IOException("SHA-1 mismatch for " + b2Path + ": expected " + expected + ", got " + actual);
+        }
+    }
+
     public File saveMultipartFileToTemp(MultipartFile file, String tempPath) throws IOException {
         try {
             File tempFile = new File(tempPath);
@@ -124,136 +376,386 @@ public class BackblazeB2Service {
     }
 
     public void uploadFile(String b2Path, File file) throws IOException, B2Exception {
-        try {
-            // Check if bucketId is available
-            if (bucketId == null || bucketId.isBlank()) {
-                throw new IllegalStateException("Bucket ID not initialized");
-            }
+        String contentType = Files.probeContentType(file.toPath());
+        if (contentType == null) {
+            contentType = "video/mp4"; // Default for video files
+        }
+        upload(file, b2Path, contentType);
+    }
 
-            String contentType = Files.probeContentType(file.toPath());
-            if (contentType == null) {
-                contentType = "video/mp4"; // Default for video files
-            }
+    public String uploadFile(MultipartFile file, String b2Path) throws IOException, B2Exception {
+        File tempFile = File.createTempFile("b2-upload-", file.getOriginalFilename());
+        try {
+            file.transferTo(tempFile);
+            String contentType = file.getContentType() != null ? file.getContentType() : "video/mp4";
+            upload(tempFile, b2Path, contentType);
+            return b2Path;
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
 
-            B2FileContentSource source = B2FileContentSource.build(file);
-            B2UploadFileRequest request = B2UploadFileRequest
-                    .builder(bucketId, b2Path, contentType, source) // Using bucketId instead of bucketName
-                    .build();
+    private void upload(File file, String b2Path, String contentType) throws IOException, B2Exception {
+        // Check if bucketId is available
+        if (bucketId == null || bucketId.isBlank()) {
+            throw new IllegalStateException("Bucket ID not initialized");
+        }
 
-            if (file.length() > LARGE_FILE_THRESHOLD) {
-                logger.debug("Using large file upload for file: {}", file.getName());
-                b2Client.uploadLargeFile(request, executorService);
+        long startNanos = System.nanoTime();
+        AtomicInteger retries = new AtomicInteger();
+        int parts = 1;
+        try {
+            if (file.length() > largeFileThreshold) {
+                parts = uploadLargeFile(file, b2Path, contentType, retries);
             } else {
-                b2Client.uploadSmallFile(request);
+                B2UploadFileRequest request = B2UploadFileRequest
+                        .builder(bucketId, b2Path, contentType, B2FileContentSource.build(file))
+                        .build();
+                withRetry("upload " + b2Path, () -> b2Client.uploadSmallFile(request), retries, partRetries);
             }
-
-            logger.info("Uploaded file to B2: {}/{}", bucketName, b2Path);
         } catch (B2Exception e) {
             logger.error("Failed to upload file to B2: {}/{}, error: {}", bucketName, b2Path, e.getMessage(), e);
             throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted: " + b2Path);
         }
+
+        fileInfoCache.remove(b2Path);
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        double seconds = Math.max(elapsedNanos / 1e9, 1e-3);
+        uploadTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        uploadThroughput.record(file.length() / seconds);
+        logger.info("Uploaded file to B2: {}/{} ({} MB, {} parts, {} retries) in {} ms, {} MB/s",
+                bucketName, b2Path, String.format("%.1f", file.length() / 1048576.0), parts, retries.get(),
+                elapsedNanos / 1_000_000, String.format("%.1f", file.length() / 1048576.0 / seconds));
     }
 
-    public String uploadFile(MultipartFile file, String b2Path) throws IOException, B2Exception {
-        try {
-            // Check if bucketId is available
-            if (bucketId == null || bucketId.isBlank()) {
-                throw new IllegalStateException("Bucket ID not initialized");
+    // Parts are read straight from the file by the worker that sends them, so memory use is
+    // at most (global concurrency x part size) no matter how many uploads are running
+    private int uploadLargeFile(File file, String b2Path, String contentType, AtomicInteger retries)
+            throws IOException, B2Exception, InterruptedException {
+        long length = file.length();
+        // B2 wants at least two parts and at most 10,000
+        long effectivePartSize = Math.max(MIN_PART_SIZE,
+                Math.max(Math.min(partSize, (length + 1) / 2), (length + MAX_PARTS - 1) / MAX_PARTS));
+        int partCount = (int) ((length + effectivePartSize - 1) / effectivePartSize);
+
+        String fileId = withRetry("start " + b2Path, () -> startLargeFile(b2Path, contentType), retries, partRetries);
+        String[] sha1s = new String[partCount];
+        Semaphore inFlight = new Semaphore(perFileConcurrency);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Future<?>> futures = new ArrayList<>(partCount);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < partCount && failure.get() == null; i++) {
+                int partNumber = i + 1;
+                long offset = i * effectivePartSize;
+                int partLength = (int) Math.min(effectivePartSize, length - offset);
+
+                inFlight.acquire();
+                futures.add(partExecutor.submit(() -> {
+                    try {
+                        byte[] data = readPart(channel, offset, partLength);
+                        String sha1 = sha1Hex(data);
+                        withRetry("part " + partNumber + " of " + b2Path,
+                                () -> uploadPart(fileId, partNumber, data, sha1), retries, partRetries);
+                        sha1s[partNumber - 1] = sha1;
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
             }
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            cancelQuietly(fileId);
+            throw e;
+        }
 
-            File tempFile = File.createTempFile("b2-upload-", file.getOriginalFilename());
-            file.transferTo(tempFile);
+        Exception error = failure.get();
+        if (error != null) {
+            cancelQuietly(fileId);
+            if (error instanceof B2Exception b2Exception) throw b2Exception;
+            if (error instanceof IOException ioException) throw ioException;
+            throw new IOException("Large file upload failed: " + b2Path, error);
+        }
 
-            String contentType = file.getContentType() != null ? file.getContentType() : "video/mp4";
-            B2FileContentSource source = B2FileContentSource.build(tempFile);
-            B2UploadFileRequest request = B2UploadFileRequest
-                    .builder(bucketId, b2Path, contentType, source) // Using bucketId instead of bucketName
-                    .build();
+        withRetry("finish " + b2Path, () -> {
+            finishLargeFile(fileId, Arrays.asList(sha1s));
+            return null;
+        }, retries, partRetries);
+        return partCount;
+    }
 
-            if (tempFile.length() > LARGE_FILE_THRESHOLD) {
-                logger.debug("Using large file upload for file: {}", file.getOriginalFilename());
-                b2Client.uploadLargeFile(request, executorService);
-            } else {
-                b2Client.uploadSmallFile(request);
+    private static byte[] readPart(FileChannel channel, long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("File shorter than expected at offset " + (offset + buffer.position()));
             }
+        }
+        return data;
+    }
 
-            logger.debug("Uploaded MultipartFile to B2: bucket={}, path={}", bucketName, b2Path);
-            tempFile.delete();
-            return b2Path;
+    private static String sha1Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private void cancelQuietly(String fileId) {
+        try {
+            cancelLargeFile(fileId);
         } catch (B2Exception e) {
-            logger.error("Failed to upload MultipartFile to B2: path={}, error={}", b2Path, e.getMessage(), e);
-            throw e;
+            logger.warn("Failed to cancel large file {}: {}", fileId, e.getMessage());
         }
     }
 
+    @FunctionalInterface
+    private interface B2Call<T> {
+        T call() throws B2Exception;
+    }
+
+    // Exponential backoff with jitter. Requests B2 rejected as invalid are not retried.
+    private <T> T withRetry(String what, B2Call<T> call, AtomicInteger retries, Counter retryCounter)
+            throws B2Exception, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return call.call();
+            } catch (B2Exception e) {
+                if (attempt >= maxRetries || !isRetryable(e)) {
+                    throw e;
+                }
+                long delay = retryBaseDelayMs * (1L << Math.min(attempt, 10));
+                delay += ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+                logger.warn("B2 {} failed ({}), retry {}/{} in {} ms", what, e.getMessage(), attempt + 1, maxRetries, delay);
+                retries.incrementAndGet();
+                retryCounter.increment();
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    private static boolean isRetryable(B2Exception e) {
+        int status = e.getStatus();
+        return status != 400 && status != 403 && status != 404;
+    }
+
     public String uploadFile(File file, String b2Path) throws IOException, B2Exception {
         uploadFile(b2Path, file);
         return b2Path;
     }
 
+    // Large-file primitives for resumable uploads; B2 keeps the parts until finish or cancel
+
+    public String startLargeFile(String b2Path, String contentType) throws B2Exception {
+        if (bucketId == null || bucketId.isBlank()) {
+            throw new IllegalStateException("Bucket ID not initialized");
+        }
+        B2FileVersion version = b2Client.startLargeFile(
+                B2StartLargeFileRequest.builder(bucketId, b2Path, contentType).build());
+        logger.info("Started large file in B2: {}/{}, ID: {}", bucketName, b2Path, version.getFileId());
+        return version.getFileId();
+    }
+
+    // Each call gets its own part URL, so parts of one file can be uploaded concurrently
+    public B2Part uploadPart(String fileId, int partNumber, byte[] data, String sha1) throws B2Exception {
+        B2UploadPartUrlResponse partUrl = b2Client.getUploadPartUrl(B2GetUploadPartUrlRequest.builder(fileId).build());
+        B2ByteArrayContentSource source = B2ByteArrayContentSource.builder(data)
+                .setSha1OrNull(sha1)
+                .build();
+        return b2Client.uploadPart(partUrl, B2UploadPartRequest.builder(partNumber, source).build());
+    }
+
+    // Same, reading the part from disk so it is never held in memory; retries re-read the file
+    public B2Part uploadPart(String fileId, int partNumber, File data, String sha1) throws B2Exception {
+        B2UploadPartUrlResponse partUrl = b2Client.getUploadPartUrl(B2GetUploadPartUrlRequest.builder(fileId).build());
+        B2FileContentSource source = B2FileContentSource.builder(data)
+                .setSha1(sha1)
+                .build();
+        return b2Client.uploadPart(partUrl, B2UploadPartRequest.builder(partNumber, source).build());
+    }
+
+    // Part number -> SHA-1 of the parts B2 already has
+    public Map<Integer, String> listParts(String fileId) throws B2Exception {
+        Map<Integer, String> parts = new TreeMap<>();
+        for (B2Part part : b2Client.parts(B2ListPartsRequest.builder(fileId).build())) {
+            parts.put(part.getPartNumber(), part.getContentSha1());
+        }
+        return parts;
+    }
+
+    public void finishLargeFile(String fileId, List<String> partSha1s) throws B2Exception {
+        B2FileVersion version = b2Client.finishLargeFile(B2FinishLargeFileRequest.builder(fileId, partSha1s).build());
+        fileInfoCache.remove(version.getFileName());
+        logger.info("Finished large file in B2: ID {}, {} parts", fileId, partSha1s.size());
+    }
+
+    public void cancelLargeFile(String fileId) throws B2Exception {
+        b2Client.cancelLargeFile(B2CancelLargeFileRequest.builder(fileId).build());
+        logger.info("Cancelled large file in B2: ID {}", fileId);
+    }
+
     public void deleteFile(String b2Path) throws B2Exception {
         try {
             B2ListFileVersionsRequest request = B2ListFileVersionsRequest
                     .builder(bucketName)
                     .setStartFileName(b2Path)
+                    .setMaxFileCount(100)
                     .build();
 
+            // Versions come back sorted by name, so stop at the first other name instead of paging the bucket
+            List<B2FileVersion> versions = new ArrayList<>();
             for (B2FileVersion version : b2Client.fileVersions(request)) {
-                if (version.getFileName().equals(b2Path)) {
-                    B2DeleteFileVersionRequest deleteRequest = B2DeleteFileVersionRequest
-                            .builder(version.getFileName(), version.getFileId())
-                            .build();
-                    b2Client.deleteFileVersion(deleteRequest);
-                    logger.debug("Deleted file version from B2: {}/{}, ID: {}",
-                            bucketName, b2Path, version.getFileId());
+                if (!version.getFileName().equals(b2Path)) {
+                    break;
                 }
+                versions.add(version);
             }
-            logger.debug("Deleted file from B2: bucket={}, path={}", bucketName, b2Path);
+            deleteVersions(versions);
+            logger.debug("Deleted file from B2: bucket={}, path={}, versions={}", bucketName, b2Path, versions.size());
         } catch (B2Exception e) {
             logger.error("Failed to delete file from B2: path={}, error={}", b2Path, e.getMessage());
             throw e;
         }
     }
 
+    // Deletes one version only, e.g. a finished large file (its file ID is the upload's), leaving older ones alone
+    public void deleteFileVersion(String b2Path, String fileId) throws B2Exception {
+        fileInfoCache.remove(b2Path);
+        b2Client.deleteFileVersion(B2DeleteFileVersionRequest.builder(b2Path, fileId).build());
+        logger.info("Deleted file version from B2: path={}, ID {}", b2Path, fileId);
+    }
+
     public void deleteDirectory(String prefix) throws B2Exception {
         try {
             B2ListFileVersionsRequest request = B2ListFileVersionsRequest
                     .builder(bucketName)
                     .setPrefix(prefix)
+                    .setMaxFileCount(1000)
                     .build();
 
+            // Each page of up to 1000 versions is deleted concurrently before the next page is listed
+            List<B2FileVersion> batch = new ArrayList<>();
+            int deleted = 0;
             for (B2FileVersion version : b2Client.fileVersions(request)) {
-                B2DeleteFileVersionRequest deleteRequest = B2DeleteFileVersionRequest
-                        .builder(version.getFileName(), version.getFileId())
-                        .build();
-                b2Client.deleteFileVersion(deleteRequest);
-                logger.debug("Deleted file version from B2: {}/{}, ID: {}",
-                        bucketName, version.getFileName(), version.getFileId());
+                batch.add(version);
+                if (batch.size() == 1000) {
+                    deleteVersions(batch);
+                    deleted += batch.size();
+                    batch.clear();
+                }
             }
-            logger.debug("Deleted B2 directory: bucket={}, prefix={}", bucketName, prefix);
+            deleteVersions(batch);
+            deleted += batch.size();
+            logger.info("Deleted B2 directory: bucket={}, prefix={}, versions={}", bucketName, prefix, deleted);
         } catch (B2Exception e) {
             logger.error("Failed to delete B2 directory: prefix={}, error={}", prefix, e.getMessage());
             throw e;
         }
     }
 
-    public boolean fileExists(String b2Path) {
-        try {
-            B2ListFileVersionsRequest request = B2ListFileVersionsRequest
-                    .builder(bucketName)
-                    .setStartFileName(b2Path)
-                    .setMaxFileCount(1)
-                    .build();
-            for (B2FileVersion version : b2Client.fileVersions(request)) {
-                if (version.getFileName().equals(b2Path)) {
-                    logger.debug("File exists in B2: bucket={}, path={}", bucketName, b2Path);
-                    return true;
+    // At most b2.delete.concurrency deletes in flight; every version is attempted and the first error is rethrown
+    private void deleteVersions(List<B2FileVersion> versions) throws B2Exception {
+        if (versions.isEmpty()) {
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(versions.size());
+        for (B2FileVersion version : versions) {
+            fileInfoCache.remove(version.getFileName());
+            futures.add(deleteExecutor.submit(() -> {
+                b2Client.deleteFileVersion(B2DeleteFileVersionRequest
+                        .builder(version.getFileName(), version.getFileId())
+                        .build());
+                return null;
+            }));
+        }
+
+        B2Exception firstError = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (firstError == null) {
+                    if (e.getCause() instanceof B2Exception b2Exception) {
+                        firstError = b2Exception;
+                    } else {
+                        throw new RuntimeException("Failed to delete from B2", e.getCause());
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(pending -> pending.cancel(true));
+                throw new RuntimeException("Interrupted while deleting from B2", e);
             }
-            return false;
+        }
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
+    // Metadata of the current version. Only found files are cached (for b2.metadata.cache-ttl-ms):
+    // a miss is usually a file about to be written, and a cached miss would hide it once uploaded.
+    public Optional<B2FileVersion> getFileInfo(String b2Path) throws B2Exception {
+        CachedFileInfo cached = fileInfoCache.get(b2Path);
+        if (cached != null && cached.expiresAtNanos() - System.nanoTime() > 0) {
+            return Optional.of(cached.fileVersion());
+        }
+
+        B2FileVersion version;
+        try {
+            version = b2Client.getFileInfoByName(B2GetFileInfoByNameRequest.builder(bucketName, b2Path).build());
+        } catch (B2NotFoundException e) {
+            fileInfoCache.remove(b2Path);
+            return Optional.empty();
+        }
+        if (fileInfoCache.size() >= MAX_CACHED_FILE_INFOS) {
+            fileInfoCache.clear();
+        }
+        fileInfoCache.put(b2Path, new CachedFileInfo(version, System.nanoTime() + fileInfoTtlNanos));
+        return Optional.of(version);
+    }
+
+    public boolean fileExists(String b2Path) {
+        try {
+            boolean exists = getFileInfo(b2Path).isPresent();
+            logger.debug("File {} in B2: bucket={}, path={}", exists ? "exists" : "missing", bucketName, b2Path);
+            return exists;
         } catch (B2Exception e) {
             logger.error("Error checking file existence in B2: path={}, error={}", b2Path, e.getMessage());
             return false;
         }
     }
+
+    // First candidate that exists, checked concurrently; empty when none does
+    public Optional<String> findExisting(List<String> candidates) {
+        List<Future<Boolean>> checks = new ArrayList<>(candidates.size());
+        for (String candidate : candidates) {
+            checks.add(lookupExecutor.submit(() -> fileExists(candidate)));
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            try {
+                if (checks.get(i).get()) {
+                    return Optional.of(candidates.get(i));
+                }
+            } catch (ExecutionException e) {
+                logger.warn("Existence check failed for {}: {}", candidates.get(i), e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
 }
\ No newline at end of file
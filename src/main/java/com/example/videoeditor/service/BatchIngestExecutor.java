@@ -0,0 +1,122 @@
+package com.example.videoeditor.service;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the per-file work of one multi-file upload (temp save, B2 upload, waveform) concurrently.
+// The pool is shared by all requests, so total ingest parallelism stays bounded.
+@Component
+public class BatchIngestExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(BatchIngestExecutor.class);
+
+    @FunctionalInterface
+    public interface IngestTask<T> {
+        T call() throws IOException, InterruptedException, B2Exception;
+    }
+
+    // Undoes one finished task when a sibling fails, e.g. deletes the file it uploaded
+    @FunctionalInterface
+    public interface Rollback<T> {
+        void undo(T result) throws Exception;
+    }
+
+    private final ExecutorService executorService;
+
+    public BatchIngestExecutor(@Value("${app.ingest.parallelism:4}") int parallelism) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "batch-ingest-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Results come back in task order. The first failure skips the tasks that have not started and is rethrown.
+    public <T> List<T> runAll(List<IngestTask<T>> tasks) throws IOException, InterruptedException, B2Exception {
+        return runAll(tasks, result -> { });
+    }
+
+    // Same, and on failure waits for the tasks already running, then rolls back every task that succeeded,
+    // so a failed batch leaves nothing behind that the caller would never record
+    public <T> List<T> runAll(List<IngestTask<T>> tasks, Rollback<T> rollback)
+            throws IOException, InterruptedException, B2Exception {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1) {
+            results.add(tasks.get(0).call());
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        AtomicBoolean aborted = new AtomicBoolean();
+        for (IngestTask<T> task : tasks) {
+            // cancel(false) would also mark a running task cancelled and drop its result, so tasks that have not
+            // started check this flag instead and running ones are left to finish and be rolled back
+            futures.add(executorService.submit(() -> {
+                if (aborted.get()) {
+                    throw new CancellationException("Batch aborted");
+                }
+                return task.call();
+            }));
+        }
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            aborted.set(true);
+            rollBack(futures, rollback);
+            Throwable cause = e.getCause();
+            logger.error("Batch ingest failed: {}", cause.getMessage());
+            if (cause instanceof IOException ioException) throw ioException;
+            if (cause instanceof B2Exception b2Exception) throw b2Exception;
+            if (cause instanceof InterruptedException interruptedException) throw interruptedException;
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException("Batch ingest failed", cause);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+    }
+
+    private <T> void rollBack(List<Future<T>> futures, Rollback<T> rollback) throws InterruptedException {
+        int undone = 0;
+        for (Future<T> future : futures) {
+            T result;
+            try {
+                result = future.get();
+            } catch (ExecutionException failed) {
+                continue;
+            }
+            try {
+                rollback.undo(result);
+                undone++;
+            } catch (Exception e) {
+                logger.warn("Batch ingest rollback failed: {}", e.getMessage());
+            }
+        }
+        if (undone > 0) {
+            logger.info("Rolled back {} finished tasks of a failed batch", undone);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.videoeditor.service;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.example.videoeditor.entity.Project;
+import com.example.videoeditor.entity.ProjectAsset;
+import com.example.videoeditor.entity.UploadSession;
+import com.example.videoeditor.entity.User;
+import com.example.videoeditor.entity.Video;
+import com.example.videoeditor.repository.ProjectRepository;
+import com.example.videoeditor.repository.UploadSessionRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Resumable uploads that skip Spring multipart: the client PUTs fixed-size chunks, each one is spooled
+// to a part-sized temp file (hashed on the way) and stored as a part of a B2 large file. After a network drop the client asks which
+// parts B2 already has and sends only the rest.
+@Service
+public class ChunkedUploadService {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024; // B2 minimum for all but the last part
+    private static final long MAX_PART_SIZE = 512L * 1024 * 1024; // one part is spooled to disk while it goes to B2
+    private static final int MAX_PARTS = 10000;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final ProjectRepository projectRepository;
+    private final BackblazeB2Service backblazeB2Service;
+    private final VideoEditingService videoEditingService;
+    private final VideoService videoService;
+
+    @Value("${app.upload.part-size-bytes:16777216}")
+    private long defaultPartSize;
+
+    @Value("${app.upload.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    @Value("${app.base-dir:/tmp}")
+    private String baseDir;
+
+    public ChunkedUploadService(UploadSessionRepository uploadSessionRepository, ProjectRepository projectRepository,
+                                BackblazeB2Service backblazeB2Service, VideoEditingService videoEditingService,
+                                VideoService videoService) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.projectRepository = projectRepository;
+        this.backblazeB2Service = backblazeB2Service;
+        this.videoEditingService = videoEditingService;
+        this.videoService = videoService;
+    }
+
+    public UploadSession startUpload(User user, UploadSession.Kind kind, Long projectId, String fileName,
+                                     String title, String contentType, long fileSize) throws B2Exception {
+        if (fileName == null || fileName.isBlank()) {
+            throw new RuntimeException("fileName is required");
+        }
+        if (kind != UploadSession.Kind.VIDEO) {
+            if (projectId == null) {
+                throw new RuntimeException("projectId is required for " + kind + " uploads");
+            }
+            // Checked before anything is written under the project's B2 prefix
+            Project project = projectRepository.findById(projectId)
+                    .orElseThrow(() -> new RuntimeException("Project not found with ID: " + projectId));
+            if (!project.getUser().getId().equals(user.getId())) {
+                throw new RuntimeException("Unauthorized to modify this project");
+            }
+        }
+
+        // B2 large files need at least two parts; smaller files go through the regular upload endpoints
+        long partSize = Math.max(Math.max(defaultPartSize, MIN_PART_SIZE), (fileSize + MAX_PARTS - 1) / MAX_PARTS);
+        if (fileSize <= partSize) {
+            throw new RuntimeException("File too small for a chunked upload (" + fileSize + " bytes); use the regular upload endpoint");
+        }
+        if (partSize > MAX_PART_SIZE) {
+            throw new RuntimeException("File too large for a chunked upload (" + fileSize + " bytes)");
+        }
+
+        String safeName = fileName.replaceAll("[/\\\\]", "_");
+        String b2Path;
+        switch (kind) {
+            case VIDEO:
+                b2Path = "videos/users/" + user.getId() + "/" + safeName;
+                break;
+            case AUDIO:
+                safeName = projectId + "_" + System.currentTimeMillis() + "_" + safeName;
+                b2Path = "audio/projects/" + projectId + "/" + safeName;
+                break;
+            default:
+                safeName = projectId + "_" + System.currentTimeMillis() + "_" + safeName;
+                b2Path = "images/projects/" + projectId + "/" + safeName;
+                break;
+        }
+        String type = contentType != null && !contentType.isBlank() ? contentType : "b2/x-auto";
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUser(user);
+        session.setProjectId(projectId);
+        session.setKind(kind);
+        session.setStatus(UploadSession.Status.ACTIVE);
+        session.setFileName(safeName);
+        session.setTitle(title != null ? title : fileName);
+        session.setContentType(type);
+        session.setB2Path(b2Path);
+        session.setFileSize(fileSize);
+        session.setPartSize(partSize);
+        session.setB2FileId(backblazeB2Service.startLargeFile(b2Path, type));
+        return uploadSessionRepository.save(session);
+    }
+
+    // Reads exactly one part from the request body and hands it to B2; re-sending a part replaces it
+    public Map<String, Object> uploadPart(User user, String uploadId, int partNumber, InputStream body)
+            throws IOException, B2Exception {
+        UploadSession session = getActiveSession(user, uploadId);
+        if (partNumber < 1 || partNumber > session.getPartCount()) {
+            throw new RuntimeException("Part number must be between 1 and " + session.getPartCount());
+        }
+
+        long expected = session.getPartLength(partNumber);
+        File tempDir = new File(baseDir, "temp");
+        tempDir.mkdirs();
+        File partFile = new File(tempDir, "upload_" + uploadId + "_" + partNumber + "_" + System.nanoTime() + ".part");
+        String sha1;
+        try {
+            sha1 = spool(body, partFile, expected);
+            if (sha1 == null) {
+                throw new IOException("Part " + partNumber + " must be exactly " + expected + " bytes");
+            }
+            backblazeB2Service.uploadPart(session.getB2FileId(), partNumber, partFile, sha1);
+        } finally {
+            Files.deleteIfExists(partFile.toPath());
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("partNumber", partNumber);
+        result.put("sha1", sha1);
+        return result;
+    }
+
+    public Map<String, Object> getUploadStatus(User user, String uploadId) throws B2Exception {
+        UploadSession session = getOwnedSession(user, uploadId);
+        Map<String, Object> status = toResponse(session);
+        if (session.getStatus() == UploadSession.Status.ACTIVE) {
+            status.put("uploadedParts", new ArrayList<>(backblazeB2Service.listParts(session.getB2FileId()).keySet()));
+        }
+        return status;
+    }
+
+    // Finishes the B2 large file from the parts B2 reports, then registers the video or project asset
+    public Map<String, Object> completeUpload(User user, String uploadId) throws B2Exception, JsonProcessingException {
+        UploadSession session = getActiveSession(user, uploadId);
+
+        Map<Integer, String> parts = backblazeB2Service.listParts(session.getB2FileId());
+        List<String> sha1s = new ArrayList<>(session.getPartCount());
+        List<Integer> missing = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= session.getPartCount(); partNumber++) {
+            String sha1 = parts.get(partNumber);
+            if (sha1 == null) {
+                missing.add(partNumber);
+            } else {
+                sha1s.add(sha1);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new RuntimeException("Upload incomplete, missing parts: " + missing);
+        }
+
+        backblazeB2Service.finishLargeFile(session.getB2FileId(), sha1s);
+
+        // Registered before the session is closed; a file nothing points at is removed again
+        Map<String, Object> result = toResponse(session);
+        try {
+            switch (session.getKind()) {
+                case VIDEO:
+                    Video video = videoService.registerUploadedVideo(user, session.getTitle(), session.getB2Path());
+                    result.put("video", video);
+                    break;
+                case AUDIO:
+                    result.put("asset", videoEditingService.registerUploadedAsset(user, session.getProjectId(),
+                            ProjectAsset.Type.AUDIO, session.getB2Path(), session.getFileName()));
+                    break;
+                case IMAGE:
+                    result.put("asset", videoEditingService.registerUploadedAsset(user, session.getProjectId(),
+                            ProjectAsset.Type.IMAGE, session.getB2Path(), session.getFileName()));
+                    break;
+            }
+        } catch (JsonProcessingException | RuntimeException e) {
+            logger.error("Registering chunked upload {} failed, deleting {}: {}", uploadId, session.getB2Path(), e.getMessage());
+            try {
+                backblazeB2Service.deleteFileVersion(session.getB2Path(), session.getB2FileId());
+            } catch (B2Exception deleteError) {
+                logger.warn("Failed to delete unregistered upload {}: {}", session.getB2Path(), deleteError.getMessage());
+            }
+            // The large file is finished, so its parts can't be completed again; the client starts a new upload
+            session.setStatus(UploadSession.Status.FAILED);
+            uploadSessionRepository.save(session);
+            throw e;
+        }
+
+        session.setStatus(UploadSession.Status.COMPLETED);
+        session.setCompletedAt(LocalDateTime.now());
+        uploadSessionRepository.save(session);
+        result.put("status", session.getStatus());
+        logger.info("Completed chunked upload {} ({} parts) to {}", uploadId, sha1s.size(), session.getB2Path());
+        return result;
+    }
+
+    public void cancelUpload(User user, String uploadId) throws B2Exception {
+        cancel(getActiveSession(user, uploadId));
+    }
+
+    // Unfinished large files keep their parts (and storage cost) in B2 until cancelled
+    @Scheduled(fixedDelayString = "${app.upload.stale-check-interval-ms:3600000}")
+    public void cancelStaleUploads() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(sessionTtlHours);
+        for (UploadSession session : uploadSessionRepository.findByStatusCreatedBefore(UploadSession.Status.ACTIVE, cutoff)) {
+            try {
+                cancel(session);
+            } catch (Exception e) {
+                logger.warn("Failed to cancel stale upload {}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void cancel(UploadSession session) throws B2Exception {
+        backblazeB2Service.cancelLargeFile(session.getB2FileId());
+        session.setStatus(UploadSession.Status.CANCELLED);
+        uploadSessionRepository.save(session);
+    }
+
+    private UploadSession getOwnedSession(User user, String uploadId) {
+        UploadSession session = uploadSessionRepository.findById(uploadId)
+                .orElseThrow(() -> new RuntimeException("Upload not found: " + uploadId));
+        if (!session.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("Unauthorized to access this upload");
+        }
+        return session;
+    }
+
+    private UploadSession getActiveSession(User user, String uploadId) {
+        UploadSession session = getOwnedSession(user, uploadId);
+        if (session.getStatus() != UploadSession.Status.ACTIVE) {
+            throw new RuntimeException("Upload is " + session.getStatus().name().toLowerCase());
+        }
+        return session;
+    }
+
+    public Map<String, Object> toResponse(UploadSession session) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("uploadId", session.getId());
+        response.put("status", session.getStatus());
+        response.put("kind", session.getKind());
+        response.put("fileName", session.getFileName());
+        response.put("fileSize", session.getFileSize());
+        response.put("partSize", session.getPartSize());
+        response.put("partCount", session.getPartCount());
+        return response;
+    }
+
+    // Copies exactly `length` bytes to the file and returns their SHA-1, or null when the body is shorter or longer
+    private static String spool(InputStream body, File file, long length) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = length;
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            while (remaining > 0) {
+                int read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    return null;
+                }
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        if (body.read() != -1) {
+            return null;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
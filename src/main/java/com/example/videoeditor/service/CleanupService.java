@@ -15,7 +15,9 @@ public class CleanupService {
         this.userRepository = userRepository;
     }
 
-    @Scheduled(cron = "0 0 0 * * ?") // Daily at midnight
+    // Off unless app.cleanup.unverified-users-cron is set (e.g. "0 0 0 * * ?" for daily at midnight);
+    // "-" disables the trigger, so enabling scheduling for checkpoints does not start deleting users
+    @Scheduled(cron = "${app.cleanup.unverified-users-cron:-}")
     @Transactional
     public void cleanupUnverifiedUsers() {
         LocalDateTime threshold = LocalDateTime.now().minusHours(24);
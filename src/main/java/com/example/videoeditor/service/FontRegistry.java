@@ -0,0 +1,135 @@
+package com.example.videoeditor.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.Font;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// Fonts parsed once at startup from the configured directories, one base Font per family.
+// Callers derive the size they need, which is cheap compared to Font.createFont.
+@Component
+public class FontRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(FontRegistry.class);
+    private static final int MAX_SCAN_DEPTH = 6;
+
+    // Lower-cased family name -> regular face of that family
+    private final Map<String, Font> fontsByFamily = new ConcurrentHashMap<>();
+    private final Map<String, File> filesByFamily = new ConcurrentHashMap<>();
+    private volatile List<String> families = List.of();
+
+    @Value("${app.fonts.dirs:/usr/share/fonts,/usr/local/share/fonts,C:/Windows/Fonts}")
+    private String fontDirs;
+
+    @Value("${app.fonts.default-family:Arial}")
+    private String defaultFamily;
+
+    @PostConstruct
+    public void scan() {
+        long start = System.currentTimeMillis();
+        Map<String, String> displayNames = new ConcurrentHashMap<>();
+        for (String dir : fontDirs.split(",")) {
+            Path root = Paths.get(dir.trim());
+            if (dir.isBlank() || !Files.isDirectory(root)) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(root, MAX_SCAN_DEPTH)) {
+                paths.filter(Files::isRegularFile)
+                        .filter(path -> isFontFile(path.getFileName().toString()))
+                        .forEach(path -> register(path.toFile(), displayNames));
+            } catch (IOException e) {
+                logger.warn("Failed to scan font directory {}: {}", root, e.getMessage());
+            }
+        }
+
+        List<String> sorted = new ArrayList<>(displayNames.values());
+        sorted.sort(String.CASE_INSENSITIVE_ORDER);
+        families = Collections.unmodifiableList(sorted);
+        logger.info("Loaded {} font families from {} in {} ms", families.size(), fontDirs,
+                System.currentTimeMillis() - start);
+    }
+
+    private static boolean isFontFile(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".ttf") || lower.endsWith(".otf") || lower.endsWith(".ttc");
+    }
+
+    private void register(File file, Map<String, String> displayNames) {
+        try {
+            Font[] faces = file.getName().toLowerCase(Locale.ROOT).endsWith(".ttc")
+                    ? Font.createFonts(file)
+                    : new Font[]{Font.createFont(Font.TRUETYPE_FONT, file)};
+            for (Font face : faces) {
+                String family = face.getFamily(Locale.ROOT);
+                String key = family.toLowerCase(Locale.ROOT);
+                Font existing = fontsByFamily.get(key);
+                // Keep the regular face when a family ships bold/italic files too
+                if (existing == null || (!isRegular(existing) && isRegular(face))) {
+                    fontsByFamily.put(key, face);
+                    filesByFamily.put(key, file);
+                    displayNames.put(key, family);
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("Skipping unreadable font file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static boolean isRegular(Font face) {
+        String name = face.getFontName(Locale.ROOT);
+        String family = face.getFamily(Locale.ROOT);
+        return name.equalsIgnoreCase(family) || name.toLowerCase(Locale.ROOT).endsWith("regular");
+    }
+
+    public List<String> getFamilies() {
+        return families;
+    }
+
+    public boolean hasFamily(String family) {
+        return family != null && fontsByFamily.containsKey(family.trim().toLowerCase(Locale.ROOT));
+    }
+
+    // Family lookup is case-insensitive; unknown families fall back to the default family, then to the JDK's Arial
+    public Font getFont(String family, float size) {
+        Font base = family != null ? fontsByFamily.get(family.trim().toLowerCase(Locale.ROOT)) : null;
+        if (base == null) {
+            if (family != null && !family.isBlank()) {
+                logger.debug("Font family '{}' not installed, using {}", family, defaultFamily);
+            }
+            base = fontsByFamily.get(defaultFamily.toLowerCase(Locale.ROOT));
+        }
+        if (base == null) {
+            return new Font("Arial", Font.PLAIN, Math.round(size));
+        }
+        return base.deriveFont(size);
+    }
+
+    // Font file backing a family, for tools that load fonts themselves (ffmpeg/libass)
+    public File getFontFile(String family) {
+        return family != null ? filesByFamily.get(family.trim().toLowerCase(Locale.ROOT)) : null;
+    }
+
+    public List<Path> getFontDirectories() {
+        return Arrays.stream(fontDirs.split(","))
+                .map(String::trim)
+                .filter(dir -> !dir.isEmpty())
+                .map(Paths::get)
+                .filter(Files::isDirectory)
+                .toList();
+    }
+}
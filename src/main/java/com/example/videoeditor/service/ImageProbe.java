@@ -0,0 +1,35 @@
+package com.example.videoeditor.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+// Image size from the file header only; ImageIO.read would decode every pixel just to get two ints
+public final class ImageProbe {
+    private ImageProbe() {
+    }
+
+    // Null when no ImageIO reader understands the format
+    public static Dimension dimensions(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.videoeditor.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Single-instance queue, used when no SQS queue is configured (local dev and tests)
+@Component
+@ConditionalOnExpression("'${app.ingest.sqs-queue-url:}'.isEmpty()")
+public class InMemoryIngestQueue implements IngestQueue {
+    private final BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+
+    @Override
+    public void publish(Long assetId) {
+        queue.add(assetId);
+    }
+
+    @Override
+    public Long poll(long waitMillis) throws InterruptedException {
+        return queue.poll(waitMillis, TimeUnit.MILLISECONDS);
+    }
+}
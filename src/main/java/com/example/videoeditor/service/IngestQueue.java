@@ -0,0 +1,10 @@
+package com.example.videoeditor.service;
+
+// Work queue of project asset ids waiting for post-upload processing.
+// The asset row holds the real state, so a lost message only delays an asset until the next startup sweep.
+public interface IngestQueue {
+    void publish(Long assetId);
+
+    // Waits up to waitMillis for the next asset id; null when nothing arrived
+    Long poll(long waitMillis) throws InterruptedException;
+}
@@ -0,0 +1,365 @@
+package com.example.videoeditor.service;
+
+import com.example.videoeditor.dto.Keyframe;
+import com.example.videoeditor.dto.KeyframeTrack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// One animated property as sorted primitive arrays. The same curve is evaluated in Java (valueAt, sample for
+// UI previews) and compiled into an ffmpeg expression (toExpression), so both agree on the shape.
+// A keyframe's interpolation type describes the span that starts at it; before the first and after the last
+// keyframe the value holds.
+public final class KeyframeCurve {
+
+    public enum Interpolation {
+        LINEAR, HOLD, EASE_IN, EASE_OUT, EASE_IN_OUT, BEZIER;
+
+        // Accepts the names clients send ("ease-in", "easeInOut", "bezier(0.42,0,0.58,1)", ...); unknown is linear
+        static Interpolation parse(String type) {
+            if (type == null) {
+                return LINEAR;
+            }
+            String normalized = type.trim().toLowerCase(Locale.ROOT).replace("-", "").replace("_", "");
+            if (normalized.startsWith("bezier") || normalized.startsWith("cubicbezier")) {
+                return BEZIER;
+            }
+            switch (normalized) {
+                case "hold":
+                case "step":
+                case "constant":
+                    return HOLD;
+                case "easein":
+                    return EASE_IN;
+                case "easeout":
+                    return EASE_OUT;
+                case "ease":
+                case "easeinout":
+                    return EASE_IN_OUT;
+                default:
+                    return LINEAR;
+            }
+        }
+    }
+
+    // CSS "ease" when a bezier keyframe carries no control points
+    private static final double[] DEFAULT_BEZIER = {0.25, 0.1, 0.25, 1.0};
+    // Bezier spans are compiled to ffmpeg as this many linear pieces; valueAt solves them exactly
+    private static final int BEZIER_PIECES = 16;
+
+    private static final KeyframeCurve EMPTY = new KeyframeCurve(new double[0], new double[0], new Interpolation[0], new double[0][]);
+
+    private final double[] times;
+    private final double[] values;
+    private final Interpolation[] interpolations;
+    private final double[][] bezierControls;
+
+    private KeyframeCurve(double[] times, double[] values, Interpolation[] interpolations, double[][] bezierControls) {
+        this.times = times;
+        this.values = values;
+        this.interpolations = interpolations;
+        this.bezierControls = bezierControls;
+    }
+
+    // Keyframes with non-numeric values are skipped; for equal times the later one in the list wins
+    public static KeyframeCurve of(List<Keyframe> keyframes) {
+        if (keyframes instanceof KeyframeTrack track) {
+            return of(track);
+        }
+        if (keyframes == null || keyframes.isEmpty()) {
+            return EMPTY;
+        }
+        List<Keyframe> sorted = new ArrayList<>(keyframes.size());
+        for (Keyframe keyframe : keyframes) {
+            if (keyframe != null && keyframe.getValue() instanceof Number) {
+                sorted.add(keyframe);
+            }
+        }
+        sorted.sort(Comparator.comparingDouble(Keyframe::getTime));
+
+        int count = 0;
+        double[] times = new double[sorted.size()];
+        double[] values = new double[sorted.size()];
+        Interpolation[] interpolations = new Interpolation[sorted.size()];
+        double[][] controls = new double[sorted.size()][];
+        for (Keyframe keyframe : sorted) {
+            if (count > 0 && times[count - 1] == keyframe.getTime()) {
+                count--;
+            }
+            times[count] = keyframe.getTime();
+            values[count] = ((Number) keyframe.getValue()).doubleValue();
+            interpolations[count] = Interpolation.parse(keyframe.getInterpolationType());
+            controls[count] = interpolations[count] == Interpolation.BEZIER
+                    ? parseBezier(keyframe.getInterpolationType()) : null;
+            count++;
+        }
+        return new KeyframeCurve(Arrays.copyOf(times, count), Arrays.copyOf(values, count),
+                Arrays.copyOf(interpolations, count), Arrays.copyOf(controls, count));
+    }
+
+    // A track is already sorted and de-duplicated, so this only copies its primitive arrays
+    public static KeyframeCurve of(KeyframeTrack track) {
+        if (track == null || track.isEmpty()) {
+            return EMPTY;
+        }
+        int count = 0;
+        double[] times = new double[track.size()];
+        double[] values = new double[track.size()];
+        Interpolation[] interpolations = new Interpolation[track.size()];
+        double[][] controls = new double[track.size()][];
+        for (int i = 0; i < track.size(); i++) {
+            if (Double.isNaN(track.valueAt(i))) {
+                continue;
+            }
+            String type = track.get(i).getInterpolationType();
+            times[count] = track.timeAt(i);
+            values[count] = track.valueAt(i);
+            interpolations[count] = Interpolation.parse(type);
+            controls[count] = interpolations[count] == Interpolation.BEZIER ? parseBezier(type) : null;
+            count++;
+        }
+        return new KeyframeCurve(Arrays.copyOf(times, count), Arrays.copyOf(values, count),
+                Arrays.copyOf(interpolations, count), Arrays.copyOf(controls, count));
+    }
+
+    private static double[] parseBezier(String type) {
+        int open = type.indexOf('(');
+        int close = type.lastIndexOf(')');
+        if (open < 0 || close <= open) {
+            return DEFAULT_BEZIER;
+        }
+        String[] parts = type.substring(open + 1, close).split(",");
+        if (parts.length != 4) {
+            return DEFAULT_BEZIER;
+        }
+        try {
+            double[] points = new double[4];
+            for (int i = 0; i < 4; i++) {
+                points[i] = Double.parseDouble(parts[i].trim());
+            }
+            // x must stay within [0, 1] for the curve to be a function of time
+            points[0] = Math.max(0, Math.min(1, points[0]));
+            points[2] = Math.max(0, Math.min(1, points[2]));
+            return points;
+        } catch (NumberFormatException e) {
+            return DEFAULT_BEZIER;
+        }
+    }
+
+    public boolean isEmpty() {
+        return times.length == 0;
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    // True when every keyframe holds the same value, so the curve needs no per-frame evaluation
+    public boolean isConstant() {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] != values[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Largest value the curve reaches; eased spans stay between their end values, bezier ones may overshoot
+    public double max(double fallback) {
+        if (isEmpty()) {
+            return fallback;
+        }
+        double max = values[0];
+        for (int i = 0; i < times.length; i++) {
+            max = Math.max(max, values[i]);
+            if (interpolations[i] == Interpolation.BEZIER && i + 1 < times.length) {
+                for (int k = 1; k < BEZIER_PIECES; k++) {
+                    max = Math.max(max, spanValue(i, k / (double) BEZIER_PIECES));
+                }
+            }
+        }
+        return max;
+    }
+
+    // Same curve with every value multiplied by factor
+    public KeyframeCurve scaled(double factor) {
+        double[] scaledValues = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            scaledValues[i] = values[i] * factor;
+        }
+        return new KeyframeCurve(times, scaledValues, interpolations, bezierControls);
+    }
+
+    public double valueAt(double time, double fallback) {
+        if (isEmpty()) {
+            return fallback;
+        }
+        if (time <= times[0]) {
+            return values[0];
+        }
+        int last = times.length - 1;
+        if (time >= times[last]) {
+            return values[last];
+        }
+        int index = Arrays.binarySearch(times, time);
+        if (index >= 0) {
+            return values[index];
+        }
+        int span = -index - 2; // keyframe that starts the span containing time
+        double progress = (time - times[span]) / (times[span + 1] - times[span]);
+        return spanValue(span, progress);
+    }
+
+    private double spanValue(int span, double progress) {
+        double from = values[span];
+        double to = values[span + 1];
+        return from + (to - from) * ease(span, progress);
+    }
+
+    private double ease(int span, double p) {
+        switch (interpolations[span]) {
+            case HOLD:
+                return 0;
+            case EASE_IN:
+                return p * p;
+            case EASE_OUT:
+                return 1 - (1 - p) * (1 - p);
+            case EASE_IN_OUT:
+                return p * p * (3 - 2 * p);
+            case BEZIER:
+                return bezierAt(bezierControls[span], p);
+            default:
+                return p;
+        }
+    }
+
+    // y on a cubic bezier from (0,0) to (1,1) at x = p, found by bisection on the curve parameter
+    private static double bezierAt(double[] c, double p) {
+        double low = 0;
+        double high = 1;
+        double s = p;
+        for (int i = 0; i < 30; i++) {
+            s = (low + high) / 2;
+            if (cubic(c[0], c[2], s) < p) {
+                low = s;
+            } else {
+                high = s;
+            }
+        }
+        return cubic(c[1], c[3], s);
+    }
+
+    private static double cubic(double p1, double p2, double s) {
+        double inv = 1 - s;
+        return 3 * inv * inv * s * p1 + 3 * inv * s * s * p2 + s * s * s;
+    }
+
+    // Evenly spaced samples for previews: {"times": [...], "values": [...]}
+    public Map<String, double[]> sample(double start, double end, int count, double fallback) {
+        int samples = Math.max(2, count);
+        double[] sampleTimes = new double[samples];
+        double[] sampleValues = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            sampleTimes[i] = start + (end - start) * i / (samples - 1);
+            sampleValues[i] = valueAt(sampleTimes[i], fallback);
+        }
+        Map<String, double[]> result = new LinkedHashMap<>();
+        result.put("times", sampleTimes);
+        result.put("values", sampleValues);
+        return result;
+    }
+
+    // ffmpeg expression in t, with keyframe times shifted by timeOffset (the segment's timeline start).
+    // Spans nest as if(lt(t,end), span, rest); register 0 holds the span progress so it is computed once.
+    // No ';' sequencing, so the result is safe inside a filter graph even where it isn't quoted.
+    public String toExpression(double timeOffset, double fallback) {
+        return toExpression("t", timeOffset, fallback);
+    }
+
+    // Same expression over another time variable, e.g. "T" for sendcmd [expr] commands
+    public String toExpression(String timeVariable, double timeOffset, double fallback) {
+        if (isEmpty()) {
+            return number(fallback);
+        }
+        if (times.length == 1) {
+            return number(values[0]);
+        }
+        StringBuilder expr = new StringBuilder();
+        expr.append("if(lt(").append(timeVariable).append(",").append(number(times[0] + timeOffset)).append("),").append(number(values[0])).append(",");
+        int open = 1;
+        for (int i = 0; i + 1 < times.length; i++) {
+            double spanStart = times[i] + timeOffset;
+            double spanEnd = times[i + 1] + timeOffset;
+            expr.append("if(lt(").append(timeVariable).append(",").append(number(spanEnd)).append("),")
+                    .append(spanExpression(i, timeVariable, spanStart, spanEnd)).append(",");
+            open++;
+        }
+        expr.append(number(values[times.length - 1]));
+        for (int i = 0; i < open; i++) {
+            expr.append(")");
+        }
+        return expr.toString();
+    }
+
+    private String spanExpression(int span, String timeVariable, double spanStart, double spanEnd) {
+        double from = values[span];
+        double to = values[span + 1];
+        if (interpolations[span] == Interpolation.HOLD || from == to) {
+            return number(from);
+        }
+        String progress = "st(0,min(1,max(0,(" + timeVariable + "-" + number(spanStart) + ")/" + number(spanEnd - spanStart) + ")))";
+        String eased;
+        switch (interpolations[span]) {
+            case EASE_IN:
+                eased = "ld(0)*ld(0)";
+                break;
+            case EASE_OUT:
+                eased = "(1-(1-ld(0))*(1-ld(0)))";
+                break;
+            case EASE_IN_OUT:
+                eased = "ld(0)*ld(0)*(3-2*ld(0))";
+                break;
+            case BEZIER:
+                eased = bezierPieces(bezierControls[span]);
+                break;
+            default:
+                eased = "ld(0)";
+                break;
+        }
+        // if() evaluates its condition first, which stores the progress before the body reads it
+        return "if(" + progress + "+1," + number(from) + "+" + number(to - from) + "*" + eased + ",0)";
+    }
+
+    // Piecewise-linear bezier easing over ld(0), exact at BEZIER_PIECES + 1 points
+    private static String bezierPieces(double[] controls) {
+        StringBuilder expr = new StringBuilder();
+        double previousX = 0;
+        double previousY = 0;
+        for (int k = 1; k <= BEZIER_PIECES; k++) {
+            double x = k / (double) BEZIER_PIECES;
+            double y = bezierAt(controls, x);
+            String piece = "(" + number(previousY) + "+" + number(y - previousY) + "*(ld(0)-" + number(previousX) + ")/"
+                    + number(x - previousX) + ")";
+            if (k < BEZIER_PIECES) {
+                expr.append("if(lt(ld(0),").append(number(x)).append("),").append(piece).append(",");
+            } else {
+                expr.append(piece);
+            }
+            previousX = x;
+            previousY = y;
+        }
+        for (int k = 1; k < BEZIER_PIECES; k++) {
+            expr.append(")");
+        }
+        return "(" + expr + ")";
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.videoeditor.service;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.example.videoeditor.entity.ProjectAsset;
+import com.example.videoeditor.repository.ProjectAssetRepository;
+import com.example.videoeditor.repository.ProjectRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.awt.Dimension;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Derived work for uploaded assets, done off the request thread:
+//   UPLOADED -> PROBED (duration, image size) -> WAVEFORM (peaks) -> PROXY (image rendition) -> READY
+// Each finished stage is written to the asset row, so an asset picked up again resumes where it stopped.
+// A worker first claims the row with a lease that every finished stage renews; duplicate messages and other
+// instances skip a live claim, and a lease left behind by a crashed worker is requeued once it expires.
+@Service
+public class MediaIngestPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(MediaIngestPipeline.class);
+    private static final long POLL_WAIT_MS = 5000;
+    private static final EnumSet<ProjectAsset.ProcessingStatus> IN_PROGRESS = EnumSet.of(
+            ProjectAsset.ProcessingStatus.UPLOADED,
+            ProjectAsset.ProcessingStatus.PROBED,
+            ProjectAsset.ProcessingStatus.WAVEFORM,
+            ProjectAsset.ProcessingStatus.PROXY);
+
+    private final ProjectAssetRepository projectAssetRepository;
+    private final ProjectRepository projectRepository;
+    private final BackblazeB2Service backblazeB2Service;
+    private final WaveformService waveformService;
+    private final IngestQueue ingestQueue;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    @Value("${ffprobe.path:/usr/bin/ffprobe}")
+    private String ffprobePath;
+
+    @Value("${ffmpeg.path:/usr/local/bin/ffmpeg}")
+    private String ffmpegPath;
+
+    // Longest side of an image rendition when the project has no canvas size
+    @Value("${app.ingest.image-max-dimension:3840}")
+    private int imageMaxDimension;
+
+    @Value("${app.base-dir:/tmp}")
+    private String baseDir;
+
+    @Value("${app.ingest.workers:2}")
+    private int workerCount;
+
+    // Longest a single stage may run before another worker may take the asset over
+    @Value("${app.ingest.lease-minutes:15}")
+    private long leaseMinutes;
+
+    public MediaIngestPipeline(ProjectAssetRepository projectAssetRepository, ProjectRepository projectRepository,
+                               BackblazeB2Service backblazeB2Service, WaveformService waveformService,
+                               IngestQueue ingestQueue) {
+        this.projectAssetRepository = projectAssetRepository;
+        this.projectRepository = projectRepository;
+        this.backblazeB2Service = backblazeB2Service;
+        this.waveformService = waveformService;
+        this.ingestQueue = ingestQueue;
+    }
+
+    // Called once the asset row exists and its bytes are in B2
+    public void submit(ProjectAsset asset) {
+        ingestQueue.publish(asset.getId());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        for (int i = 0; i < Math.max(1, workerCount); i++) {
+            Thread worker = new Thread(this::runWorker, "media-ingest-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        // Requeue whatever was in flight when the previous instance stopped
+        requeueUnclaimed();
+    }
+
+    // Picks up assets whose worker died mid-run (its lease expired) or whose message was lost
+    @Scheduled(fixedDelayString = "${app.ingest.lease-sweep-interval-ms:300000}",
+            initialDelayString = "${app.ingest.lease-sweep-interval-ms:300000}")
+    public void requeueUnclaimed() {
+        List<ProjectAsset> pending = projectAssetRepository.findUnclaimedByProcessingStatusIn(IN_PROGRESS, LocalDateTime.now());
+        pending.forEach(this::submit);
+        if (!pending.isEmpty()) {
+            logger.info("Requeued {} assets with unfinished processing", pending.size());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                Long assetId = ingestQueue.poll(POLL_WAIT_MS);
+                if (assetId != null) {
+                    process(assetId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Media ingest worker error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    void process(Long assetId) throws InterruptedException {
+        ProjectAsset asset = projectAssetRepository.findById(assetId).orElse(null);
+        if (asset == null || asset.getProcessingStatus() == null || !IN_PROGRESS.contains(asset.getProcessingStatus())) {
+            return; // deleted, legacy or already finished (duplicate message)
+        }
+        String owner = UUID.randomUUID().toString();
+        if (projectAssetRepository.claimProcessing(assetId, asset.getProcessingStatus(), owner,
+                leaseUntil(), LocalDateTime.now()) == 0) {
+            return; // another worker holds it, or it moved on since it was read
+        }
+        Long projectId = projectAssetRepository.findProjectIdById(assetId);
+        boolean audio = asset.getType() == ProjectAsset.Type.AUDIO || asset.getType() == ProjectAsset.Type.EXTRACTED_AUDIO;
+        boolean image = asset.getType() == ProjectAsset.Type.IMAGE;
+
+        ProjectAsset.ProcessingStatus status = asset.getProcessingStatus();
+        File localFile = null;
+        try {
+            while (status != ProjectAsset.ProcessingStatus.READY) {
+                ProjectAsset.ProcessingStatus next;
+                switch (status) {
+                    case UPLOADED:
+                        if (audio) {
+                            localFile = download(asset, localFile);
+                            projectAssetRepository.updateDuration(assetId, probeDuration(localFile));
+                        } else if (image && asset.getWidth() == null) {
+                            localFile = download(asset, localFile);
+                            Dimension size = probeImageSize(localFile);
+                            projectAssetRepository.updateDimensions(assetId, size.width, size.height);
+                            asset.setWidth(size.width);
+                            asset.setHeight(size.height);
+                        }
+                        next = ProjectAsset.ProcessingStatus.PROBED;
+                        break;
+                    case PROBED:
+                        if (audio && asset.getWaveformJsonPath() == null) {
+                            localFile = download(asset, localFile);
+                            WaveformPyramid peaks = waveformService.decodePeaks(localFile);
+                            String waveformJsonPath = waveformService.uploadWaveform(
+                                    peaks, new File(asset.getPath()).getName(), projectId);
+                            projectAssetRepository.updateWaveformJsonPath(assetId, waveformJsonPath);
+                        }
+                        next = ProjectAsset.ProcessingStatus.WAVEFORM;
+                        break;
+                    case WAVEFORM:
+                        // Images larger than the canvas get a pre-scaled copy so exports don't decode and
+                        // downscale the full photo on every frame; other types have no proxy yet
+                        if (image && asset.getRenditionPath() == null && asset.getWidth() != null) {
+                            int bound = renditionBound(projectId);
+                            if (Math.max(asset.getWidth(), asset.getHeight()) > bound) {
+                                localFile = download(asset, localFile);
+                                createRendition(asset, localFile, bound);
+                            }
+                        }
+                        next = ProjectAsset.ProcessingStatus.PROXY;
+                        break;
+                    default:
+                        next = ProjectAsset.ProcessingStatus.READY;
+                        break;
+                }
+
+                if (projectAssetRepository.advanceProcessing(assetId, owner, next, null, leaseUntil()) == 0) {
+                    logger.info("Asset {} was removed or taken over during processing", assetId);
+                    return;
+                }
+                status = next;
+            }
+            logger.info("Asset {} ({}) is ready", assetId, asset.getFileName());
+        } catch (InterruptedException e) {
+            // Left at the last finished stage; the released claim lets the next start pick it up
+            throw e;
+        } catch (Exception e) {
+            logger.error("Processing failed for asset {} at stage {}: {}", assetId, status, e.getMessage(), e);
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            projectAssetRepository.advanceProcessing(assetId, owner, ProjectAsset.ProcessingStatus.FAILED,
+                    error.length() > 1024 ? error.substring(0, 1024) : error, null);
+        } finally {
+            projectAssetRepository.releaseClaim(assetId, owner);
+            if (localFile != null) {
+                try {
+                    Files.deleteIfExists(localFile.toPath());
+                } catch (IOException e) {
+                    logger.warn("Failed to delete temp file: {}", localFile.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    private LocalDateTime leaseUntil() {
+        return LocalDateTime.now().plusMinutes(leaseMinutes);
+    }
+
+    // Downloads at most once per processing run; later stages reuse the same local copy
+    private File download(ProjectAsset asset, File existing) throws IOException, B2Exception {
+        if (existing != null && existing.exists()) {
+            return existing;
+        }
+        String tempPath = baseDir + "/temp/ingest_" + asset.getId() + "_" + new File(asset.getPath()).getName();
+        File file = backblazeB2Service.downloadFile(asset.getPath(), tempPath);
+        if (!file.exists()) {
+            throw new IOException("Downloaded file not found: " + file.getAbsolutePath());
+        }
+        return file;
+    }
+
+    private Dimension probeImageSize(File file) throws IOException, InterruptedException {
+        Dimension size = ImageProbe.dimensions(file);
+        if (size != null) {
+            return size;
+        }
+        // Formats ImageIO can't read (webp, heic, ...) still have a video stream for ffprobe
+        ProcessBuilder builder = new ProcessBuilder(
+                ffprobePath,
+                "-v", "error",
+                "-select_streams", "v:0",
+                "-show_entries", "stream=width,height",
+                "-of", "csv=s=x:p=0",
+                file.getAbsolutePath()
+        );
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = reader.readLine();
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || line == null || !line.trim().matches("\\d+x\\d+")) {
+            throw new IOException("Failed to probe image size for file: " + file.getName());
+        }
+        String[] parts = line.trim().split("x");
+        return new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    private int renditionBound(Long projectId) {
+        return projectRepository.findById(projectId)
+                .filter(project -> project.getWidth() != null && project.getHeight() != null)
+                .map(project -> Math.max(project.getWidth(), project.getHeight()))
+                .orElse(imageMaxDimension);
+    }
+
+    // Lanczos-downscaled RGBA PNG next to the original, e.g. images/projects/1/renditions/photo.png
+    private void createRendition(ProjectAsset asset, File source, int bound)
+            throws IOException, InterruptedException, B2Exception {
+        double factor = bound / (double) Math.max(asset.getWidth(), asset.getHeight());
+        int width = Math.max(1, (int) Math.round(asset.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(asset.getHeight() * factor));
+
+        File output = new File(baseDir + "/temp/rendition_" + asset.getId() + ".png");
+        try {
+            ProcessBuilder builder = new ProcessBuilder(
+                    ffmpegPath, "-y",
+                    "-i", source.getAbsolutePath(),
+                    "-vf", "scale=" + width + ":" + height + ":flags=lanczos,format=rgba",
+                    "-frames:v", "1",
+                    output.getAbsolutePath()
+            );
+            builder.redirectErrorStream(true);
+            Process process = builder.start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                while (reader.readLine() != null) {
+                    // drain so ffmpeg never blocks on a full pipe
+                }
+            }
+            if (process.waitFor() != 0 || !output.exists()) {
+                throw new IOException("Failed to create rendition for image: " + asset.getFileName());
+            }
+
+            String path = asset.getPath();
+            int slash = path.lastIndexOf('/');
+            String name = path.substring(slash + 1);
+            int dot = name.lastIndexOf('.');
+            String renditionPath = path.substring(0, slash + 1) + "renditions/" + (dot > 0 ? name.substring(0, dot) : name) + ".png";
+            backblazeB2Service.uploadFile(output, renditionPath);
+            projectAssetRepository.updateRendition(asset.getId(), renditionPath, width, height);
+            logger.info("Image asset {} downscaled from {}x{} to {}x{}", asset.getId(),
+                    asset.getWidth(), asset.getHeight(), width, height);
+        } finally {
+            Files.deleteIfExists(output.toPath());
+        }
+    }
+
+    private double probeDuration(File file) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder(
+                ffprobePath,
+                "-v", "error",
+                "-show_entries", "format=duration",
+                "-of", "default=noprint_wrappers=1:nokey=1",
+                file.getAbsolutePath()
+        );
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+
+        String duration;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            duration = reader.readLine();
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || duration == null) {
+            throw new IOException("Failed to probe duration for file: " + file.getName());
+        }
+        return Math.round(Double.parseDouble(duration.trim()) * 1000.0) / 1000.0;
+    }
+
+    public Map<String, Object> toStatusMap(ProjectAsset asset) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("assetId", asset.getId());
+        status.put("type", asset.getType());
+        status.put("fileName", asset.getFileName());
+        status.put("status", asset.getProcessingStatus() != null
+                ? asset.getProcessingStatus() : ProjectAsset.ProcessingStatus.READY);
+        status.put("durationSeconds", asset.getDurationSeconds());
+        status.put("waveformJsonPath", asset.getWaveformJsonPath());
+        if (asset.getWidth() != null) {
+            status.put("width", asset.getWidth());
+            status.put("height", asset.getHeight());
+        }
+        if (asset.getProcessingError() != null) {
+            status.put("error", asset.getProcessingError());
+        }
+        return status;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.videoeditor.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Shares ingest work between instances. Messages are deleted as soon as they are received;
+// the asset's processing status, not the message, is what survives a crash.
+@Component
+@ConditionalOnExpression("!'${app.ingest.sqs-queue-url:}'.isEmpty()")
+public class SqsIngestQueue implements IngestQueue {
+    private static final Logger logger = LoggerFactory.getLogger(SqsIngestQueue.class);
+    private static final int MAX_WAIT_SECONDS = 20; // SQS long-poll limit
+
+    private final SqsClient sqsClient;
+    private final String queueUrl;
+    // Extra messages from one receive call, handed out on the next polls
+    private final BlockingQueue<Long> received = new LinkedBlockingQueue<>();
+
+    public SqsIngestQueue(@Value("${app.ingest.sqs-queue-url}") String queueUrl) {
+        this.sqsClient = SqsClient.create();
+        this.queueUrl = queueUrl;
+    }
+
+    @Override
+    public void publish(Long assetId) {
+        sqsClient.sendMessage(SendMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .messageBody(String.valueOf(assetId))
+                .build());
+    }
+
+    @Override
+    public Long poll(long waitMillis) throws InterruptedException {
+        Long next = received.poll();
+        if (next != null) {
+            return next;
+        }
+
+        int waitSeconds = (int) Math.min(MAX_WAIT_SECONDS, Math.max(0, waitMillis / 1000));
+        List<Message> messages = sqsClient.receiveMessage(ReceiveMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .maxNumberOfMessages(10)
+                .waitTimeSeconds(waitSeconds)
+                .build()).messages();
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        for (Message message : messages) {
+            sqsClient.deleteMessage(DeleteMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .receiptHandle(message.receiptHandle())
+                    .build());
+            try {
+                received.add(Long.parseLong(message.body().trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("Dropping malformed ingest message: {}", message.body());
+            }
+        }
+        return received.poll();
+    }
+
+    @PreDestroy
+    public void close() {
+        sqsClient.close();
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.videoeditor.service;
+
+import com.example.videoeditor.dto.ImageSegment;
+import com.example.videoeditor.dto.Segment;
+import com.example.videoeditor.dto.TextSegment;
+import com.example.videoeditor.dto.TimelineState;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Folds image and text overlays that never move into canvas-sized RGBA plates, one plate per run of
+// static segments sharing a time window, so ffmpeg evaluates one overlay per plate instead of one per segment.
+// Placement copies the overlay chain: centred on (W/2 + positionX, H/2 + positionY), snapped to even pixels
+// like overlay does on the yuv420 base.
+@Component
+public class StaticOverlayPlanner {
+
+    public static class Plate {
+        private final double start;
+        private final double end;
+        private final List<Segment> members = new ArrayList<>();
+
+        Plate(double start, double end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public double getStart() {
+            return start;
+        }
+
+        public double getEnd() {
+            return end;
+        }
+
+        // Bottom to top
+        public List<Segment> getMembers() {
+            return members;
+        }
+    }
+
+    // Plates of two or more segments. skippedTextIds are captions that never reach the overlay chain (ASS, empty).
+    // A plate stays open for new members only until something it overlaps in time is stacked on top of it,
+    // so drawing the plate at its first member's place in the chain keeps the original stacking.
+    public List<Plate> plan(TimelineState timelineState, Set<String> skippedTextIds) {
+        List<Segment> stacking = new ArrayList<>();
+        stacking.addAll(timelineState.getSegments());
+        stacking.addAll(timelineState.getImageSegments());
+        for (TextSegment ts : timelineState.getTextSegments()) {
+            if (!skippedTextIds.contains(ts.getId())) {
+                stacking.add(ts);
+            }
+        }
+        stacking.sort(Comparator.comparingInt(segment -> segment.getLayer() != null ? segment.getLayer() : 0));
+
+        List<Plate> plates = new ArrayList<>();
+        List<Plate> open = new ArrayList<>();
+        for (Segment segment : stacking) {
+            boolean isStatic = isStatic(timelineState, segment);
+            Plate target = null;
+            if (isStatic) {
+                for (Plate plate : open) {
+                    if (plate.start == segment.getTimelineStartTime() && plate.end == segment.getTimelineEndTime()) {
+                        target = plate;
+                        break;
+                    }
+                }
+            }
+            Plate joined = target;
+            open.removeIf(plate -> plate != joined && plate.start < segment.getTimelineEndTime()
+                    && segment.getTimelineStartTime() < plate.end);
+            if (isStatic) {
+                if (target == null) {
+                    target = new Plate(segment.getTimelineStartTime(), segment.getTimelineEndTime());
+                    open.add(target);
+                    plates.add(target);
+                }
+                target.members.add(segment);
+            }
+        }
+        plates.removeIf(plate -> plate.members.size() < 2);
+        return plates;
+    }
+
+    private static boolean isStatic(TimelineState timelineState, Segment segment) {
+        if (segment.getTimelineEndTime() <= segment.getTimelineStartTime()) {
+            return false;
+        }
+        if (!timelineState.getTransitionsForSegment(segment.getId()).isEmpty()) {
+            return false;
+        }
+        if (segment instanceof ImageSegment is) {
+            return !hasKeyframes(is.getKeyframes())
+                    && timelineState.getFiltersForSegment(is.getId()).isEmpty()
+                    && isZero(is.getCropL()) && isZero(is.getCropR()) && isZero(is.getCropT()) && isZero(is.getCropB());
+        }
+        if (segment instanceof TextSegment ts) {
+            return !hasKeyframes(ts.getKeyframes());
+        }
+        return false;
+    }
+
+    private static boolean hasKeyframes(Map<String, ? extends List<?>> keyframes) {
+        return keyframes != null && keyframes.values().stream().anyMatch(list -> list != null && !list.isEmpty());
+    }
+
+    private static boolean isZero(Double value) {
+        return value == null || value == 0.0;
+    }
+
+    // sources: segment id -> downloaded image or cached text PNG; inputScales: image id -> source/rendition width
+    public File composite(Plate plate, Map<String, File> sources, Map<String, Double> inputScales,
+                          int canvasWidth, int canvasHeight, File dir) throws IOException {
+        BufferedImage canvas = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = canvas.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+
+            for (Segment member : plate.members) {
+                File source = sources.get(member.getId());
+                BufferedImage image = source != null ? ImageIO.read(source) : null;
+                if (image == null) {
+                    throw new IOException("Cannot decode overlay source for segment " + member.getId());
+                }
+
+                double scale;
+                double opacity;
+                Integer positionX;
+                Integer positionY;
+                if (member instanceof ImageSegment is) {
+                    scale = (is.getScale() != null ? is.getScale() : 1.0) * inputScales.getOrDefault(is.getId(), 1.0);
+                    opacity = is.getOpacity() != null ? is.getOpacity() : 1.0;
+                    positionX = is.getPositionX();
+                    positionY = is.getPositionY();
+                } else {
+                    TextSegment ts = (TextSegment) member;
+                    // Text PNGs are rasterized at the resolution multiplier and the segment's own (only) scale
+                    scale = 1.0 / (canvasWidth >= 3840 ? 1.5 : 2.0);
+                    opacity = ts.getOpacity() != null ? ts.getOpacity() : 1.0;
+                    positionX = ts.getPositionX();
+                    positionY = ts.getPositionY();
+                }
+
+                int width = (int) (image.getWidth() * scale);
+                int height = (int) (image.getHeight() * scale);
+                if (width <= 0 || height <= 0 || opacity <= 0) {
+                    image.flush();
+                    continue;
+                }
+                int x = (int) Math.floor(canvasWidth / 2.0 + (positionX != null ? positionX : 0) - width / 2.0) & ~1;
+                int y = (int) Math.floor(canvasHeight / 2.0 + (positionY != null ? positionY : 0) - height / 2.0) & ~1;
+
+                g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) Math.min(1.0, opacity)));
+                g2d.drawImage(image, x, y, width, height, null);
+                image.flush();
+            }
+        } finally {
+            g2d.dispose();
+        }
+
+        File plateFile = new File(dir, "plate_" + System.nanoTime() + ".png");
+        ImageIO.write(canvas, "PNG", plateFile);
+        canvas.flush();
+        return plateFile;
+    }
+}
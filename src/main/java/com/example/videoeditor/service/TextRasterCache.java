@@ -0,0 +1,193 @@
+package com.example.videoeditor.service;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2NotFoundException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Rendered text overlays keyed by a hash of everything that affects the pixels.
+// Lookups go local disk -> B2 (cache/text/) -> render, and a fresh render is written to both.
+// Exports submit all their captions up front to a bounded raster pool, so rasterization overlaps input downloads.
+@Component
+public class TextRasterCache {
+    private static final Logger logger = LoggerFactory.getLogger(TextRasterCache.class);
+    private static final String B2_PREFIX = "cache/text/";
+    private static final long RECENT_USE_MS = 60 * 60 * 1000;
+
+    @FunctionalInterface
+    public interface Renderer {
+        // Renders into a file under stagingDir and returns its path
+        String render(File stagingDir) throws IOException;
+    }
+
+    private final BackblazeB2Service backblazeB2Service;
+    // One render per key at a time; concurrent exports of the same caption wait for the first
+    private final ConcurrentMap<String, Object> keyLocks = new ConcurrentHashMap<>();
+    // Shared by all exports; Java2D rendering is CPU bound, so one thread per core by default
+    private final ExecutorService rasterExecutor;
+
+    @Value("${app.base-dir:/tmp}")
+    private String baseDir;
+
+    @Value("${app.text-cache.max-local-mb:512}")
+    private long maxLocalMb;
+
+    public TextRasterCache(BackblazeB2Service backblazeB2Service,
+                           @Value("${app.text-raster.parallelism:0}") int parallelism) {
+        this.backblazeB2Service = backblazeB2Service;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.rasterExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "text-raster-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static String key(String canonicalStyle) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(canonicalStyle.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // The returned file belongs to the cache: callers must not delete it
+    public File getOrRender(String key, Renderer renderer) throws IOException {
+        File cached = localFile(key);
+        if (cached.exists()) {
+            cached.setLastModified(System.currentTimeMillis());
+            return cached;
+        }
+
+        Object lock = keyLocks.computeIfAbsent(key, k -> new Object());
+        try {
+            synchronized (lock) {
+                if (cached.exists()) {
+                    return cached;
+                }
+                if (fetchFromB2(key, cached)) {
+                    return cached;
+                }
+
+                File stagingDir = Files.createTempDirectory(cacheDir().toPath(), "render_").toFile();
+                try {
+                    File rendered = new File(renderer.render(stagingDir));
+                    Files.move(rendered.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    File[] leftovers = stagingDir.listFiles();
+                    if (leftovers != null) {
+                        for (File leftover : leftovers) {
+                            Files.deleteIfExists(leftover.toPath());
+                        }
+                    }
+                    Files.deleteIfExists(stagingDir.toPath());
+                }
+
+                try {
+                    backblazeB2Service.uploadFile(cached, B2_PREFIX + key + ".png");
+                } catch (B2Exception | IOException e) {
+                    logger.warn("Failed to upload text raster {} to B2: {}", key, e.getMessage());
+                }
+                evictIfNeeded();
+                return cached;
+            }
+        } finally {
+            keyLocks.remove(key, lock);
+        }
+    }
+
+    // Same lookup as getOrRender on the raster pool; each render draws on its own image and Graphics2D
+    public Future<File> submit(String key, Renderer renderer) {
+        return rasterExecutor.submit(() -> getOrRender(key, renderer));
+    }
+
+    // Waits for a submitted raster and rethrows its failure as the exception getOrRender would have thrown
+    public static File await(Future<File> raster) throws IOException, InterruptedException {
+        try {
+            return raster.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) throw ioException;
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException("Text rasterization failed", cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rasterExecutor.shutdownNow();
+    }
+
+    private boolean fetchFromB2(String key, File target) {
+        File partial = new File(target.getParentFile(), target.getName() + ".part");
+        try {
+            backblazeB2Service.downloadFile(B2_PREFIX + key + ".png", partial.getAbsolutePath());
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (B2NotFoundException e) {
+            return false;
+        } catch (B2Exception | IOException e) {
+            logger.warn("Failed to fetch text raster {} from B2, rendering locally: {}", key, e.getMessage());
+            partial.delete();
+            return false;
+        }
+    }
+
+    private File localFile(String key) {
+        return new File(cacheDir(), key + ".png");
+    }
+
+    private File cacheDir() {
+        File dir = new File(baseDir, "text-cache");
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    // Least recently used PNGs go first once the local cache is over its size budget; B2 keeps them
+    private synchronized void evictIfNeeded() {
+        File[] files = cacheDir().listFiles((dir, name) -> name.endsWith(".png"));
+        if (files == null) {
+            return;
+        }
+        long budget = maxLocalMb * 1024 * 1024;
+        long total = Arrays.stream(files).mapToLong(File::length).sum();
+        if (total <= budget) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long inUseCutoff = System.currentTimeMillis() - RECENT_USE_MS;
+        for (File file : files) {
+            // Anything touched recently may be an input of a running export
+            if (total <= budget * 8 / 10 || file.lastModified() > inUseCutoff) {
+                break;
+            }
+            total -= file.length();
+            file.delete();
+        }
+    }
+}
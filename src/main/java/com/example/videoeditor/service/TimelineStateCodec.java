@@ -0,0 +1,124 @@
+package com.example.videoeditor.service;
+
+import com.example.videoeditor.dto.TimelineState;
+import com.example.videoeditor.entity.Project;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Binary storage for TimelineState: [magic "TLS"][version][encoding][uncompressed length][payload]
+@Component
+public class TimelineStateCodec {
+    private static final byte[] MAGIC = {'T', 'L', 'S'};
+    private static final int HEADER_SIZE = MAGIC.length + 2 + Integer.BYTES;
+    // Same bound as the timeline_state_data column; a stored length above it can only be corrupt
+    static final int MAX_JSON_LENGTH = 64 * 1024 * 1024;
+
+    static final byte VERSION_1 = 1;
+    static final byte ENCODING_JSON_DEFLATE = 1;
+
+    private final ObjectMapper objectMapper;
+
+    public TimelineStateCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public byte[] encode(TimelineState timelineState) throws JsonProcessingException {
+        byte[] json = objectMapper.writeValueAsBytes(timelineState);
+        if (json.length > MAX_JSON_LENGTH) {
+            throw new RuntimeException("Timeline state too large to store: " + json.length + " bytes");
+        }
+
+        // Timeline JSON is very repetitive, the fastest level already gets most of the gain
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + HEADER_SIZE);
+        try {
+            deflater.setInput(json);
+            deflater.finish();
+            out.write(MAGIC, 0, MAGIC.length);
+            out.write(VERSION_1);
+            out.write(ENCODING_JSON_DEFLATE);
+            out.write(ByteBuffer.allocate(Integer.BYTES).putInt(json.length).array(), 0, Integer.BYTES);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    public TimelineState decode(byte[] data) throws JsonProcessingException {
+        if (!isEncoded(data)) {
+            throw new RuntimeException("Timeline state data has no valid header");
+        }
+        ByteBuffer header = ByteBuffer.wrap(data, MAGIC.length, HEADER_SIZE - MAGIC.length);
+        byte version = header.get();
+        byte encoding = header.get();
+        int length = header.getInt();
+        if (version != VERSION_1 || encoding != ENCODING_JSON_DEFLATE) {
+            throw new RuntimeException("Unsupported timeline state format: version " + version + ", encoding " + encoding);
+        }
+        // Checked before allocating, so a damaged header fails like any other invalid data
+        if (length < 0 || length > MAX_JSON_LENGTH) {
+            throw new RuntimeException("Invalid timeline state data: length " + length);
+        }
+
+        byte[] json = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int count = inflater.inflate(json, read, length - read);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != length) {
+                throw new RuntimeException("Timeline state data is truncated: expected " + length + " bytes, got " + read);
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Corrupt timeline state data: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        return objectMapper.readValue(json, TimelineState.class);
+    }
+
+    public boolean isEncoded(byte[] data) {
+        return data != null && data.length >= HEADER_SIZE
+                && data[0] == MAGIC[0] && data[1] == MAGIC[1] && data[2] == MAGIC[2];
+    }
+
+    // Reads the binary column, falling back to the legacy JSON TEXT column for projects saved before it existed
+    public TimelineState read(Project project) throws JsonProcessingException {
+        if (project.getTimelineStateData() != null) {
+            return decode(project.getTimelineStateData());
+        }
+        if (project.getTimelineState() != null && !project.getTimelineState().isEmpty()) {
+            return objectMapper.readValue(project.getTimelineState(), TimelineState.class);
+        }
+        return new TimelineState();
+    }
+
+    // Always writes the binary form and clears the legacy column so the two can never disagree
+    public void write(Project project, TimelineState timelineState) throws JsonProcessingException {
+        writeEncoded(project, encode(timelineState));
+    }
+
+    // Same, for bytes encode() already produced (session checkpoints are encoded on the editing thread)
+    public void writeEncoded(Project project, byte[] data) {
+        project.setTimelineStateData(data);
+        project.setTimelineState(null);
+    }
+}
@@ -7,11 +7,14 @@ import com.example.videoeditor.developer.repository.GlobalElementRepository;
 import com.example.videoeditor.dto.*;
 import com.example.videoeditor.entity.Element;
 import com.example.videoeditor.entity.Project;
+import com.example.videoeditor.entity.ProjectAsset;
 import com.example.videoeditor.entity.User;
+import com.example.videoeditor.repository.ProjectAssetRepository;
 import com.example.videoeditor.repository.ProjectRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,24 +30,38 @@ import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
 public class VideoEditingService {
     private final ProjectRepository projectRepository;
+    private final ProjectAssetRepository projectAssetRepository;
     private final ObjectMapper objectMapper;
+    private final TimelineStateCodec timelineStateCodec;
+    private final WaveformService waveformService;
     private final Map<String, EditSession> activeSessions;
+    // Project id -> edit time of the newest session state written to it; older session edits are superseded
+    private final Map<Long, Long> persistedEditTimes = new ConcurrentHashMap<>();
     private final GlobalElementRepository globalElementRepository;
 
     private final BackblazeB2Service backblazeB2Service;
     private final PathConfig pathConfig; // Add PathConfig field
+    private final BatchIngestExecutor batchIngestExecutor;
+    private final MediaIngestPipeline mediaIngestPipeline;
+    private final FontRegistry fontRegistry;
+    private final TextRasterCache textRasterCache;
+    private final AssSubtitleRenderer assSubtitleRenderer;
+    private final StaticOverlayPlanner staticOverlayPlanner;
 
     private static final Logger logger = LoggerFactory.getLogger(VideoEditingService.class);
 
@@ -58,18 +75,41 @@ public class VideoEditingService {
     @Value("${ffprobe.path:/usr/bin/ffprobe}")
     private String ffprobePath;
 
+    // Auto-checkpoint: flush once a session has been quiet for the debounce window, or dirty for the max delay
+    @Value("${app.session.checkpoint-debounce-ms:5000}")
+    private long checkpointDebounceMs;
+    @Value("${app.session.checkpoint-max-delay-ms:60000}")
+    private long checkpointMaxDelayMs;
+
     public VideoEditingService(
-            ProjectRepository projectRepository,
-            ObjectMapper objectMapper, GlobalElementRepository globalElementRepository, BackblazeB2Service backblazeB2Service, PathConfig pathConfig
+            ProjectRepository projectRepository, ProjectAssetRepository projectAssetRepository,
+            ObjectMapper objectMapper, TimelineStateCodec timelineStateCodec, WaveformService waveformService,
+            GlobalElementRepository globalElementRepository, BackblazeB2Service backblazeB2Service, PathConfig pathConfig,
+            BatchIngestExecutor batchIngestExecutor, MediaIngestPipeline mediaIngestPipeline, FontRegistry fontRegistry,
+            TextRasterCache textRasterCache, AssSubtitleRenderer assSubtitleRenderer,
+            StaticOverlayPlanner staticOverlayPlanner
     ) {
             this.projectRepository = projectRepository;
+            this.projectAssetRepository = projectAssetRepository;
             this.objectMapper = objectMapper;
+            this.timelineStateCodec = timelineStateCodec;
+            this.waveformService = waveformService;
             this.globalElementRepository = globalElementRepository;
         this.backblazeB2Service = backblazeB2Service;
         this.pathConfig = pathConfig;
+        this.batchIngestExecutor = batchIngestExecutor;
+        this.mediaIngestPipeline = mediaIngestPipeline;
+        this.fontRegistry = fontRegistry;
+        this.textRasterCache = textRasterCache;
+        this.assSubtitleRenderer = assSubtitleRenderer;
+        this.staticOverlayPlanner = staticOverlayPlanner;
         this.activeSessions = new ConcurrentHashMap<>();
         }
 
+        // Encoded timeline of a session as of one edit, with that edit's version and time
+        private record SessionCheckpoint(long version, long editTime, byte[] data) {
+        }
+
         @Data
         private class EditSession {
             private String sessionId;
@@ -108,6 +148,59 @@ public class VideoEditingService {
             public void setLastAccessTime(long lastAccessTime) {
                 this.lastAccessTime = lastAccessTime;
             }
+
+            // Checkpoint bookkeeping: version moves on every edit, savedVersion is what the database holds
+            private final AtomicLong version = new AtomicLong();
+            private final AtomicLong savedVersion = new AtomicLong();
+            private volatile long firstDirtyTime;
+            private volatile long lastModifiedTime;
+
+            private volatile SessionCheckpoint checkpoint;
+
+            // Called by the editing thread once its change is applied, so the state it encodes here is whole
+            public synchronized void markModified() {
+                long now = System.currentTimeMillis();
+                if (!isDirty()) {
+                    firstDirtyTime = now;
+                }
+                lastModifiedTime = now;
+                lastAccessTime = now;
+                long newVersion = version.incrementAndGet();
+                if (timelineState == null) {
+                    return;
+                }
+                try {
+                    checkpoint = new SessionCheckpoint(newVersion, now, timelineStateCodec.encode(timelineState));
+                } catch (Exception e) {
+                    // The previous checkpoint stays; its older version keeps the session dirty until an edit encodes
+                    logger.warn("Checkpoint encode failed for session {}: {}", sessionId, e.getMessage());
+                }
+            }
+
+            public SessionCheckpoint getCheckpoint() {
+                return checkpoint;
+            }
+
+            public boolean isDirty() {
+                return version.get() != savedVersion.get();
+            }
+
+            // snapshotVersion is the version read before the state was serialized, so later edits stay dirty
+            public void markSaved(long snapshotVersion) {
+                savedVersion.accumulateAndGet(snapshotVersion, Math::max);
+            }
+
+            public long getVersion() {
+                return version.get();
+            }
+
+            public long getFirstDirtyTime() {
+                return firstDirtyTime;
+            }
+
+            public long getLastModifiedTime() {
+                return lastModifiedTime;
+            }
         }
 
         // NEW: Helper method to round doubles to three decimal places
@@ -118,26 +211,14 @@ public class VideoEditingService {
         }
 
         // METHODS TO ADD THE AUDIO, VIDEO AND IMAGE
-        // Moved from Project entity: Video handling methods
+        // Assets live in the project_asset table; the *Json columns on Project are only read once for migration
         public List<Map<String, String>> getVideos(Project project) throws JsonProcessingException {
-            if (project.getVideosJson() == null || project.getVideosJson().isEmpty()) {
-                return new ArrayList<>();
-            }
-            return objectMapper.readValue(project.getVideosJson(), new TypeReference<List<Map<String, String>>>() {
-            });
+            return getAssets(project, ProjectAsset.Type.VIDEO);
         }
 
         // Updated to include audioPath for tracking extracted audio
         public void addVideo(Project project, String videoPath, String videoFileName, String audioPath) throws JsonProcessingException {
-            List<Map<String, String>> videos = getVideos(project);
-            Map<String, String> videoData = new HashMap<>();
-            videoData.put("videoPath", videoPath);
-            videoData.put("videoFileName", videoFileName);
-            if (audioPath != null) {
-                videoData.put("audioPath", audioPath); // Store the audio path if provided
-            }
-            videos.add(videoData);
-            project.setVideosJson(objectMapper.writeValueAsString(videos));
+            saveAsset(project, ProjectAsset.Type.VIDEO, videoPath, videoFileName, audioPath, null, null);
         }
 
         // Overloaded method to maintain compatibility with existing calls
@@ -145,43 +226,34 @@ public class VideoEditingService {
             addVideo(project, videoPath, videoFileName, null); // Call with null audioPath for backward compatibility
         }
 
-        // Moved from Project entity: Image handling methods
+        // Links an extracted audio file to an existing project video, adding the video if it is not tracked yet
+        public void linkVideoAudio(Project project, String videoPath, String videoFileName, String audioPath) throws JsonProcessingException {
+            migrateLegacyAssets(project);
+            List<ProjectAsset> existing = projectAssetRepository.findByProjectIdAndTypeAndPath(
+                    project.getId(), ProjectAsset.Type.VIDEO, videoPath);
+            if (existing.isEmpty()) {
+                addVideo(project, videoPath, videoFileName, audioPath);
+                return;
+            }
+            ProjectAsset video = existing.get(0);
+            video.setAudioPath(audioPath);
+            projectAssetRepository.save(video);
+        }
+
         public List<Map<String, String>> getImages(Project project) throws JsonProcessingException {
-            if (project.getImagesJson() == null || project.getImagesJson().isEmpty()) {
-                return new ArrayList<>();
-            }
-            return objectMapper.readValue(project.getImagesJson(), new TypeReference<List<Map<String, String>>>() {
-            });
+            return getAssets(project, ProjectAsset.Type.IMAGE);
         }
 
         public void addImage(Project project, String imagePath, String imageFileName) throws JsonProcessingException {
-            List<Map<String, String>> images = getImages(project);
-            Map<String, String> imageData = new HashMap<>();
-            imageData.put("imagePath", imagePath);
-            imageData.put("imageFileName", imageFileName);
-            images.add(imageData);
-            project.setImagesJson(objectMapper.writeValueAsString(images));
+            saveAsset(project, ProjectAsset.Type.IMAGE, imagePath, imageFileName, null, null, null);
         }
 
-        // Moved from Project entity: Audio handling methods
         public List<Map<String, String>> getAudio(Project project) throws JsonProcessingException {
-            if (project.getAudioJson() == null || project.getAudioJson().isEmpty()) {
-                return new ArrayList<>();
-            }
-            return objectMapper.readValue(project.getAudioJson(), new TypeReference<List<Map<String, String>>>() {
-            });
+            return getAssets(project, ProjectAsset.Type.AUDIO);
         }
 
         public void addAudio(Project project, String audioPath, String audioFileName, String waveformJsonPath) throws JsonProcessingException {
-            List<Map<String, String>> audioFiles = getAudio(project);
-            Map<String, String> audioData = new HashMap<>();
-            audioData.put("audioPath", audioPath);
-            audioData.put("audioFileName", audioFileName);
-            if (waveformJsonPath != null) {
-                audioData.put("waveformJsonPath", waveformJsonPath);
-            }
-            audioFiles.add(audioData);
-            project.setAudioJson(objectMapper.writeValueAsString(audioFiles));
+            saveAsset(project, ProjectAsset.Type.AUDIO, audioPath, audioFileName, null, null, waveformJsonPath);
         }
 
         public void addAudio(Project project, String audioPath, String audioFileName) throws JsonProcessingException {
@@ -190,29 +262,274 @@ public class VideoEditingService {
 
         // Get extracted audio metadata from project
         public List<Map<String, String>> getExtractedAudio(Project project) throws JsonProcessingException {
-            if (project.getExtractedAudioJson() == null || project.getExtractedAudioJson().isEmpty()) {
-                return new ArrayList<>();
-            }
-            return objectMapper.readValue(project.getExtractedAudioJson(), new TypeReference<List<Map<String, String>>>() {});
+            return getAssets(project, ProjectAsset.Type.EXTRACTED_AUDIO);
         }
 
         public void addExtractedAudio(Project project, String audioPath, String audioFileName, String sourceVideoPath, String waveformJsonPath) throws JsonProcessingException {
-            List<Map<String, String>> extractedAudio = getExtractedAudio(project);
-            Map<String, String> audioData = new HashMap<>();
-            audioData.put("audioPath", audioPath);
-            audioData.put("audioFileName", audioFileName);
-            audioData.put("sourceVideoPath", sourceVideoPath);
-            if (waveformJsonPath != null) {
-                audioData.put("waveformJsonPath", waveformJsonPath);
-            }
-            extractedAudio.add(audioData);
-            project.setExtractedAudioJson(objectMapper.writeValueAsString(extractedAudio));
+            saveAsset(project, ProjectAsset.Type.EXTRACTED_AUDIO, audioPath, audioFileName, null, sourceVideoPath, waveformJsonPath);
         }
 
         public void addExtractedAudio(Project project, String audioPath, String audioFileName, String sourceVideoPath) throws JsonProcessingException {
             addExtractedAudio(project, audioPath, audioFileName, sourceVideoPath, null);
         }
 
+        // Response view of a project: a detached copy with the legacy JSON fields filled from project_asset rows
+        // and the decoded timeline. The managed entity is left untouched, so nothing set here is ever saved.
+        public Project exposeLegacyJson(Project project) throws JsonProcessingException {
+            if (project == null) {
+                return null;
+            }
+            return exposeLegacyJson(List.of(project)).get(0);
+        }
+
+        // Same view for a whole project list, with one asset query for all of them
+        public List<Project> exposeLegacyJson(List<Project> projects) throws JsonProcessingException {
+            List<Long> projectIds = new ArrayList<>();
+            for (Project project : projects) {
+                migrateLegacyAssets(project);
+                projectIds.add(project.getId());
+            }
+            Map<Long, List<ProjectAsset>> assetsByProject = new HashMap<>();
+            if (!projectIds.isEmpty()) {
+                for (ProjectAsset asset : projectAssetRepository.findByProjectIdIn(projectIds)) {
+                    assetsByProject.computeIfAbsent(asset.getProject().getId(), id -> new ArrayList<>()).add(asset);
+                }
+            }
+            List<Project> views = new ArrayList<>(projects.size());
+            for (Project project : projects) {
+                views.add(responseView(project, assetsByProject.getOrDefault(project.getId(), List.of())));
+            }
+            return views;
+        }
+
+        private Project responseView(Project project, List<ProjectAsset> assets) throws JsonProcessingException {
+            Map<ProjectAsset.Type, List<Map<String, String>>> byType = new EnumMap<>(ProjectAsset.Type.class);
+            for (ProjectAsset.Type type : ProjectAsset.Type.values()) {
+                byType.put(type, new ArrayList<>());
+            }
+            for (ProjectAsset asset : assets) {
+                byType.get(asset.getType()).add(toAssetMap(asset));
+            }
+
+            Project view = new Project();
+            view.setId(project.getId());
+            view.setName(project.getName());
+            view.setUser(project.getUser());
+            view.setStatus(project.getStatus());
+            view.setLastModified(project.getLastModified());
+            view.setWidth(project.getWidth());
+            view.setHeight(project.getHeight());
+            view.setFps(project.getFps());
+            view.setExportedVideoPath(project.getExportedVideoPath());
+            view.setVideosJson(objectMapper.writeValueAsString(byType.get(ProjectAsset.Type.VIDEO)));
+            view.setImagesJson(objectMapper.writeValueAsString(byType.get(ProjectAsset.Type.IMAGE)));
+            view.setAudioJson(objectMapper.writeValueAsString(byType.get(ProjectAsset.Type.AUDIO)));
+            view.setExtractedAudioJson(objectMapper.writeValueAsString(byType.get(ProjectAsset.Type.EXTRACTED_AUDIO)));
+            view.setElementJson(objectMapper.writeValueAsString(byType.get(ProjectAsset.Type.ELEMENT)));
+            view.setTimelineState(objectMapper.writeValueAsString(timelineStateCodec.read(project)));
+            return view;
+        }
+
+        private List<Map<String, String>> getAssets(Project project, ProjectAsset.Type type) throws JsonProcessingException {
+            migrateLegacyAssets(project);
+            List<Map<String, String>> result = new ArrayList<>();
+            for (ProjectAsset asset : projectAssetRepository.findByProjectIdAndType(project.getId(), type)) {
+                result.add(toAssetMap(asset));
+            }
+            return result;
+        }
+
+        private void saveAsset(Project project, ProjectAsset.Type type, String path, String fileName,
+                               String audioPath, String sourceVideoPath, String waveformJsonPath) throws JsonProcessingException {
+            migrateLegacyAssets(project);
+            projectAssetRepository.save(newAsset(project, type, path, fileName, audioPath, sourceVideoPath, waveformJsonPath));
+        }
+
+        // One saveAll for a whole upload batch instead of a save per file
+        private List<ProjectAsset> saveAssets(Project project, List<ProjectAsset> assets) throws JsonProcessingException {
+            migrateLegacyAssets(project);
+            return projectAssetRepository.saveAll(assets);
+        }
+
+        private ProjectAsset newAsset(Project project, ProjectAsset.Type type, String path, String fileName,
+                                      String audioPath, String sourceVideoPath, String waveformJsonPath) {
+            ProjectAsset asset = new ProjectAsset();
+            asset.setProject(project);
+            asset.setType(type);
+            asset.setPath(path);
+            asset.setFileName(fileName);
+            asset.setAudioPath(audioPath);
+            asset.setSourceVideoPath(sourceVideoPath);
+            asset.setWaveformJsonPath(waveformJsonPath);
+            return asset;
+        }
+
+        // Processing state of every asset in the project, for clients polling after an upload
+        public List<Map<String, Object>> getAssetStatuses(User user, Long projectId) throws JsonProcessingException {
+            Project project = projectRepository.findById(projectId)
+                    .orElseThrow(() -> new RuntimeException("Project not found with ID: " + projectId));
+            if (!project.getUser().getId().equals(user.getId())) {
+                throw new RuntimeException("Unauthorized to access this project");
+            }
+            migrateLegacyAssets(project);
+
+            List<Map<String, Object>> statuses = new ArrayList<>();
+            for (ProjectAsset.Type type : ProjectAsset.Type.values()) {
+                for (ProjectAsset asset : projectAssetRepository.findByProjectIdAndType(projectId, type)) {
+                    statuses.add(mediaIngestPipeline.toStatusMap(asset));
+                }
+            }
+            return statuses;
+        }
+
+        public Map<String, Object> getAssetStatus(User user, Long projectId, Long assetId) {
+            ProjectAsset asset = projectAssetRepository.findById(assetId)
+                    .orElseThrow(() -> new RuntimeException("Asset not found with ID: " + assetId));
+            Long assetProjectId = projectAssetRepository.findProjectIdById(assetId);
+            Project project = projectRepository.findById(projectId)
+                    .orElseThrow(() -> new RuntimeException("Project not found with ID: " + projectId));
+            if (!projectId.equals(assetProjectId) || !project.getUser().getId().equals(user.getId())) {
+                throw new RuntimeException("Unauthorized to access this asset");
+            }
+            return mediaIngestPipeline.toStatusMap(asset);
+        }
+
+        // Registers a project asset whose bytes were uploaded straight into B2 (chunked upload)
+        public Map<String, String> registerUploadedAsset(User user, Long projectId, ProjectAsset.Type type,
+                                                         String b2Path, String fileName) throws JsonProcessingException {
+            Project project = projectRepository.findById(projectId)
+                    .orElseThrow(() -> new RuntimeException("Project not found with ID: " + projectId));
+            if (!project.getUser().getId().equals(user.getId())) {
+                throw new RuntimeException("Unauthorized to modify this project");
+            }
+
+            List<ProjectAsset> saved = saveAssets(project, List.of(newUploadedAsset(project, type, b2Path, fileName)));
+            saved.forEach(mediaIngestPipeline::submit);
+            project.setLastModified(LocalDateTime.now());
+            projectRepository.save(project);
+            return toAssetMap(saved.get(0));
+        }
+
+        // Bytes are in B2; MediaIngestPipeline takes it from here
+        private ProjectAsset newUploadedAsset(Project project, ProjectAsset.Type type, String path, String fileName) {
+            ProjectAsset asset = newAsset(project, type, path, fileName, null, null, null);
+            asset.setProcessingStatus(ProjectAsset.ProcessingStatus.UPLOADED);
+            return asset;
+        }
+
+        // Keeps the key names the JSON columns used so callers and clients see the same shape
+        private Map<String, String> toAssetMap(ProjectAsset asset) {
+            Map<String, String> data = new HashMap<>();
+            if (asset.getId() != null) {
+                data.put("assetId", String.valueOf(asset.getId()));
+            }
+            if (asset.getProcessingStatus() != null) {
+                data.put("processingStatus", asset.getProcessingStatus().name());
+            }
+            if (asset.getDurationSeconds() != null) {
+                data.put("durationSeconds", String.valueOf(asset.getDurationSeconds()));
+            }
+            switch (asset.getType()) {
+                case VIDEO:
+                    data.put("videoPath", asset.getPath());
+                    data.put("videoFileName", asset.getFileName());
+                    if (asset.getAudioPath() != null) {
+                        data.put("audioPath", asset.getAudioPath());
+                    }
+                    break;
+                case IMAGE:
+                case ELEMENT:
+                    data.put("imagePath", asset.getPath());
+                    data.put("imageFileName", asset.getFileName());
+                    if (asset.getWidth() != null) {
+                        data.put("width", String.valueOf(asset.getWidth()));
+                        data.put("height", String.valueOf(asset.getHeight()));
+                    }
+                    break;
+                case AUDIO:
+                    data.put("audioPath", asset.getPath());
+                    data.put("audioFileName", asset.getFileName());
+                    if (asset.getWaveformJsonPath() != null) {
+                        data.put("waveformJsonPath", asset.getWaveformJsonPath());
+                    }
+                    break;
+                case EXTRACTED_AUDIO:
+                    data.put("audioPath", asset.getPath());
+                    data.put("audioFileName", asset.getFileName());
+                    data.put("sourceVideoPath", asset.getSourceVideoPath());
+                    if (asset.getWaveformJsonPath() != null) {
+                        data.put("waveformJsonPath", asset.getWaveformJsonPath());
+                    }
+                    break;
+            }
+            return data;
+        }
+
+        // One-time move of the legacy JSON columns into project_asset rows; the columns are cleared afterwards
+        private void migrateLegacyAssets(Project project) throws JsonProcessingException {
+            if (project.getId() == null || !hasLegacyAssetJson(project)) {
+                return;
+            }
+            if (projectAssetRepository.existsByProjectId(project.getId())) {
+                // Already migrated through another instance of this project, just drop the stale copy
+                clearLegacyAssetJson(project);
+                projectRepository.save(project);
+                return;
+            }
+            List<ProjectAsset> assets = new ArrayList<>();
+            for (Map<String, String> video : readLegacyJson(project.getVideosJson())) {
+                assets.add(newAsset(project, ProjectAsset.Type.VIDEO, video.get("videoPath"), video.get("videoFileName"),
+                        video.get("audioPath"), null, null));
+            }
+            for (Map<String, String> image : readLegacyJson(project.getImagesJson())) {
+                assets.add(newAsset(project, ProjectAsset.Type.IMAGE, image.get("imagePath"), image.get("imageFileName"),
+                        null, null, null));
+            }
+            for (Map<String, String> audio : readLegacyJson(project.getAudioJson())) {
+                assets.add(newAsset(project, ProjectAsset.Type.AUDIO, audio.get("audioPath"), audio.get("audioFileName"),
+                        null, null, audio.get("waveformJsonPath")));
+            }
+            for (Map<String, String> audio : readLegacyJson(project.getExtractedAudioJson())) {
+                assets.add(newAsset(project, ProjectAsset.Type.EXTRACTED_AUDIO, audio.get("audioPath"), audio.get("audioFileName"),
+                        null, audio.get("sourceVideoPath"), audio.get("waveformJsonPath")));
+            }
+            for (Map<String, String> element : readLegacyJson(project.getElementJson())) {
+                assets.add(newAsset(project, ProjectAsset.Type.ELEMENT, element.get("imagePath"), element.get("imageFileName"),
+                        null, null, null));
+            }
+            assets.removeIf(asset -> asset.getPath() == null);
+            projectAssetRepository.saveAll(assets);
+
+            clearLegacyAssetJson(project);
+            projectRepository.save(project);
+            logger.info("Migrated {} legacy assets for project {}", assets.size(), project.getId());
+        }
+
+        private void clearLegacyAssetJson(Project project) {
+            project.setVideosJson(null);
+            project.setImagesJson(null);
+            project.setAudioJson(null);
+            project.setExtractedAudioJson(null);
+            project.setElementJson(null);
+        }
+
+        private boolean hasLegacyAssetJson(Project project) {
+            return isNotEmpty(project.getVideosJson()) || isNotEmpty(project.getImagesJson()) ||
+                    isNotEmpty(project.getAudioJson()) || isNotEmpty(project.getExtractedAudioJson()) ||
+                    isNotEmpty(project.getElementJson());
+        }
+
+        private boolean isNotEmpty(String value) {
+            return value != null && !value.isEmpty();
+        }
+
+        private List<Map<String, String>> readLegacyJson(String json) throws JsonProcessingException {
+            if (!isNotEmpty(json)) {
+                return new ArrayList<>();
+            }
+            return objectMapper.readValue(json, new TypeReference<List<Map<String, String>>>() {});
+        }
+
         public Project createProject(User user, String name, Integer width, Integer height, Float fps) throws JsonProcessingException {
             Project project = new Project();
             project.setUser(user);
@@ -222,7 +539,7 @@ public class VideoEditingService {
             project.setWidth(width != null ? width : 1920); // Default: 1920
             project.setHeight(height != null ? height : 1080); // Default: 1080
             project.setFps(fps != null ? fps : 25.0f);
-            project.setTimelineState(objectMapper.writeValueAsString(new TimelineState()));
+            timelineStateCodec.write(project, new TimelineState());
             return projectRepository.save(project);
         }
 
@@ -238,7 +555,7 @@ public class VideoEditingService {
             if (projectId != null) {
                 Project project = projectRepository.findById(projectId)
                         .orElseThrow(() -> new RuntimeException("Project not found"));
-                timelineState = objectMapper.readValue(project.getTimelineState(), TimelineState.class);
+                timelineState = timelineStateCodec.read(project);
 
                 // Set canvas dimensions from project if not already set in TimelineState
                 if (timelineState.getCanvasWidth() == null) {
@@ -266,31 +583,164 @@ public class VideoEditingService {
 
             System.out.println("Saving timeline state with " + session.getTimelineState().getSegments().size() + " segments");
 
-            String timelineStateJson = objectMapper.writeValueAsString(session.getTimelineState());
-            project.setTimelineState(timelineStateJson);
+            long version = session.getVersion();
+            long editTime = session.getLastModifiedTime();
+            timelineStateCodec.write(project, session.getTimelineState());
             project.setLastModified(LocalDateTime.now());
             projectRepository.save(project);
+            session.markSaved(version);
+            persistedEditTimes.merge(project.getId(), editTime, Math::max);
 
-            System.out.println("Project saved successfully with timeline state: " + timelineStateJson);
+            System.out.println("Project saved successfully, timeline state size: " + project.getTimelineStateData().length + " bytes");
         }
 
-        public void saveForUndoRedo(Long projectId, String sessionId, String timelineStateJson) {
+        public void saveForUndoRedo(Long projectId, String sessionId, String timelineStateJson) throws JsonProcessingException {
             EditSession session = getSession(sessionId);
             // Fetch the project
             Project project = projectRepository.findById(session.getProjectId())
                     .orElseThrow(() -> new IllegalArgumentException("Project not found with ID: " + projectId));
 
             // Update timeline_state
-            project.setTimelineState(timelineStateJson);
+            timelineStateCodec.write(project, objectMapper.readValue(timelineStateJson, TimelineState.class));
             project.setLastModified(LocalDateTime.now());
             projectRepository.save(project);
+            // The client snapshot is now the saved state; don't let a checkpoint overwrite it with older session edits
+            session.markSaved(session.getVersion());
+            persistedEditTimes.merge(project.getId(), System.currentTimeMillis(), Math::max);
+        }
+
+        @Scheduled(fixedDelayString = "${app.session.checkpoint-interval-ms:5000}")
+        public void checkpointDirtySessions() {
+            long now = System.currentTimeMillis();
+            List<EditSession> due = new ArrayList<>();
+            for (EditSession session : activeSessions.values()) {
+                if (session.isDirty() && (now - session.getLastModifiedTime() >= checkpointDebounceMs
+                        || now - session.getFirstDirtyTime() >= checkpointMaxDelayMs)) {
+                    due.add(session);
+                }
+            }
+            if (!due.isEmpty()) {
+                Set<EditSession> unsaved = flushSessions(due);
+                logger.debug("Checkpointed {} sessions, {} left dirty", due.size() - unsaved.size(), unsaved.size());
+            }
         }
 
         @Scheduled(fixedRate = 3600000) // Every hour
         public void cleanupExpiredSessions() {
             long expiryTime = System.currentTimeMillis() - 3600000;
-            activeSessions.entrySet().removeIf(entry ->
-                    entry.getValue().getLastAccessTime() < expiryTime);
+            List<EditSession> expired = activeSessions.values().stream()
+                    .filter(session -> session.getLastAccessTime() < expiryTime)
+                    .collect(Collectors.toList());
+
+            // Flush unsaved work first; sessions that fail to flush are kept and retried next run
+            List<EditSession> dirty = expired.stream().filter(EditSession::isDirty).collect(Collectors.toList());
+            Set<EditSession> failed = dirty.isEmpty() ? Collections.emptySet() : flushSessions(dirty);
+            for (EditSession session : expired) {
+                if (!failed.contains(session) && session.getLastAccessTime() < expiryTime) {
+                    activeSessions.remove(session.getSessionId(), session);
+                }
+            }
+            Set<Long> openProjects = activeSessions.values().stream()
+                    .map(EditSession::getProjectId)
+                    .collect(Collectors.toSet());
+            persistedEditTimes.keySet().retainAll(openProjects);
+        }
+
+        @PreDestroy
+        public void flushSessionsOnShutdown() {
+            List<EditSession> dirty = activeSessions.values().stream()
+                    .filter(EditSession::isDirty)
+                    .collect(Collectors.toList());
+            Set<EditSession> unsaved = dirty.isEmpty() ? Collections.emptySet() : flushSessions(dirty);
+            if (!dirty.isEmpty()) {
+                logger.info("Flushed {} sessions on shutdown, {} left unsaved", dirty.size() - unsaved.size(), unsaved.size());
+            }
+        }
+
+        // Writes dirty sessions in a single batch, at most one per project: the most recently edited one.
+        // What is written is each session's checkpoint, the bytes its editing thread encoded right after the
+        // change, so the live TimelineState is never serialized while a request may be changing it.
+        // A session whose checkpoint is older than what its project already holds is superseded and only marked
+        // saved, so an older sibling session can never overwrite a newer checkpoint or explicit save.
+        // Returns every session that was not saved.
+        private Set<EditSession> flushSessions(Collection<EditSession> sessions) {
+            Set<EditSession> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+            Map<Long, EditSession> latestByProject = new HashMap<>();
+            Map<EditSession, SessionCheckpoint> checkpoints = new IdentityHashMap<>();
+            for (EditSession session : sessions) {
+                if (session.getProjectId() == null) {
+                    continue;
+                }
+                SessionCheckpoint checkpoint = session.getCheckpoint();
+                if (checkpoint == null) {
+                    // Every encode since the session opened failed; it stays dirty until an edit encodes
+                    failed.add(session);
+                    continue;
+                }
+                // Edits after the checkpoint have a newer version, so they stay dirty whatever happens below
+                if (checkpoint.editTime() <= persistedEditTimes.getOrDefault(session.getProjectId(), Long.MIN_VALUE)) {
+                    session.markSaved(checkpoint.version());
+                    continue;
+                }
+                EditSession current = latestByProject.get(session.getProjectId());
+                if (current == null || checkpoint.editTime() > checkpoints.get(current).editTime()) {
+                    latestByProject.put(session.getProjectId(), session);
+                }
+                checkpoints.put(session, checkpoint);
+            }
+
+            Map<Long, Project> projects = new HashMap<>();
+            try {
+                for (Project project : projectRepository.findAllById(latestByProject.keySet())) {
+                    projects.put(project.getId(), project);
+                }
+            } catch (Exception e) {
+                logger.error("Checkpoint failed to load projects: {}", e.getMessage());
+                failed.addAll(checkpoints.keySet());
+                return failed;
+            }
+
+            List<Project> toSave = new ArrayList<>();
+            Set<EditSession> written = Collections.newSetFromMap(new IdentityHashMap<>());
+            LocalDateTime now = LocalDateTime.now();
+            for (Map.Entry<Long, EditSession> entry : latestByProject.entrySet()) {
+                EditSession session = entry.getValue();
+                Project project = projects.get(entry.getKey());
+                if (project == null) {
+                    // Project was deleted, nothing left to save into
+                    continue;
+                }
+                timelineStateCodec.writeEncoded(project, checkpoints.get(session).data());
+                project.setLastModified(now);
+                toSave.add(project);
+                written.add(session);
+            }
+
+            try {
+                projectRepository.saveAll(toSave);
+                for (EditSession session : written) {
+                    persistedEditTimes.merge(session.getProjectId(), checkpoints.get(session).editTime(), Math::max);
+                }
+            } catch (Exception e) {
+                logger.error("Checkpoint batch save failed for {} projects: {}", toSave.size(), e.getMessage());
+                failed.addAll(written);
+            }
+
+            for (Map.Entry<EditSession, SessionCheckpoint> entry : checkpoints.entrySet()) {
+                EditSession session = entry.getKey();
+                SessionCheckpoint checkpoint = entry.getValue();
+                // A deleted project has nothing left to save into, so its sessions count as settled
+                boolean projectDeleted = !projects.containsKey(session.getProjectId());
+                // Older siblings of the session just written are superseded by it
+                boolean superseded = !written.contains(session)
+                        && checkpoint.editTime() <= persistedEditTimes.getOrDefault(session.getProjectId(), Long.MIN_VALUE);
+                if (projectDeleted || superseded || (written.contains(session) && !failed.contains(session))) {
+                    session.markSaved(checkpoint.version());
+                } else {
+                    failed.add(session);
+                }
+            }
+            return failed;
         }
 
         private EditSession getSession(String sessionId) {
@@ -383,21 +833,7 @@ public class VideoEditingService {
 
                 // Only create audio segment if audio was successfully extracted
                 if (audioPath != null) {
-                    List<Map<String, String>> videos = getVideos(project);
-                    boolean videoExists = false;
-                    for (Map<String, String> video : videos) {
-                        if (video.get("videoPath").equals(videoPath)) {
-                            video.put("audioPath", audioPath);
-                            videoExists = true;
-                            break;
-                        }
-                    }
-                    if (!videoExists) {
-                        addVideo(project, videoPath, videoFileName, audioPath);
-                    } else {
-                        project.setVideosJson(objectMapper.writeValueAsString(videos));
-                    }
-                    projectRepository.save(project);
+                    linkVideoAudio(project, videoPath, videoFileName, audioPath);
 
                     audioSegment = new AudioSegment();
                     audioSegment.setAudioPath(audioPath);
@@ -442,7 +878,7 @@ public class VideoEditingService {
             }
 
             session.getTimelineState().getSegments().add(segment);
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
         // NEW: Helper method to find an available audio layer
         private int findAvailableAudioLayer(TimelineState timelineState, double timelineStartTime, double timelineEndTime) {
@@ -523,23 +959,13 @@ public class VideoEditingService {
             return result;
         }
 
-        // Extract audio
-        List<String> command = new ArrayList<>();
-        command.add(ffmpegPath);
-        command.add("-i");
-        command.add(videoFile.getAbsolutePath());
-        command.add("-vn");
-        command.add("-acodec");
-        command.add("mp3");
-        command.add("-y");
-        command.add(audioFile.getAbsolutePath());
-
-        executeFFmpegCommand(command);
+        // Extract audio and compute waveform peaks in one ffmpeg pass
+        WaveformPyramid peaks = waveformService.encodeMp3WithPeaks(videoFile, audioFile);
 
-        // Upload audio to Backblaze B2
+        // Upload audio and waveform to Backblaze B2; the local MP3 is never downloaded again
         if (audioFile.exists()) {
             backblazeB2Service.uploadFile(audioFile, relativePath);
-            waveformJsonPath = generateAndSaveWaveformJson(relativePath, projectId);
+            waveformJsonPath = waveformService.uploadWaveform(peaks, audioFileName, projectId);
         } else {
             Files.deleteIfExists(videoFile.toPath());
             Map<String, String> result = new HashMap<>();
@@ -556,7 +982,6 @@ public class VideoEditingService {
         Project project = projectRepository.findById(projectId)
                 .orElseThrow(() -> new RuntimeException("Project not found"));
         addExtractedAudio(project, relativePath, audioFileName, videoPath, waveformJsonPath);
-        projectRepository.save(project);
 
         Map<String, String> result = new HashMap<>();
         result.put("audioPath", relativePath);
@@ -655,13 +1080,7 @@ public class VideoEditingService {
                 Map<String, List<Keyframe>> keyframes
         ) throws IOException, InterruptedException, B2Exception {
             EditSession session = getSession(sessionId);
-            VideoSegment segmentToUpdate = null;
-            for (VideoSegment segment : session.getTimelineState().getSegments()) {
-                if (segment.getId().equals(segmentId)) {
-                    segmentToUpdate = segment;
-                    break;
-                }
-            }
+            VideoSegment segmentToUpdate = session.getTimelineState().getSegmentById(segmentId, VideoSegment.class);
 
             if (segmentToUpdate == null) {
                 throw new RuntimeException("No segment found with ID: " + segmentId);
@@ -837,17 +1256,16 @@ public class VideoEditingService {
                 );
             }
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         public VideoSegment getVideoSegment(String sessionId, String segmentId) {
             EditSession session = getSession(sessionId);
-            for (VideoSegment segment : session.getTimelineState().getSegments()) {
-                if (segment.getId().equals(segmentId)) {
-                    return segment;
-                }
+            VideoSegment segment = session.getTimelineState().getSegmentById(segmentId, VideoSegment.class);
+            if (segment == null) {
+                throw new RuntimeException("No segment found with ID: " + segmentId);
             }
-            throw new RuntimeException("No segment found with ID: " + segmentId);
+            return segment;
         }
 
         public void addTextToTimeline(String sessionId, String text, int layer, double timelineStartTime, double timelineEndTime,
@@ -891,7 +1309,7 @@ public class VideoEditingService {
             textSegment.setTextBorderOpacity(textBorderOpacity);
 
             session.getTimelineState().getTextSegments().add(textSegment);
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         public void updateTextSegment(
@@ -921,9 +1339,7 @@ public class VideoEditingService {
                 Map<String, List<Keyframe>> keyframes
         ) throws IOException {
             EditSession session = getSession(sessionId);
-            TextSegment textSegment = session.getTimelineState().getTextSegments().stream()
-                    .filter(segment -> segment.getId().equals(segmentId))
-                    .findFirst()
+            TextSegment textSegment = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, TextSegment.class))
                     .orElseThrow(() -> new RuntimeException("Text segment not found with ID: " + segmentId));
 
             double originalTimelineStartTime = textSegment.getTimelineStartTime();
@@ -1021,7 +1437,7 @@ public class VideoEditingService {
                 );
             }
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
     public Project uploadAudioToProject(User user, Long projectId, MultipartFile[] audioFiles, String[] audioFileNames) throws IOException, InterruptedException, B2Exception {
@@ -1032,32 +1448,37 @@ public class VideoEditingService {
             throw new RuntimeException("Unauthorized to modify this project");
         }
 
+        // Files upload in parallel and the project is updated once; probing and waveforms follow in the background
+        List<BatchIngestExecutor.IngestTask<ProjectAsset>> tasks = new ArrayList<>();
         for (int i = 0; i < audioFiles.length; i++) {
             MultipartFile audioFile = audioFiles[i];
             String originalFileName = audioFile.getOriginalFilename();
             String uniqueFileName = (audioFileNames != null && i < audioFileNames.length && audioFileNames[i] != null)
                     ? audioFileNames[i]
-                    : projectId + "_" + System.currentTimeMillis() + "_" + originalFileName;
-
-            // Save to temporary file
-            String tempPath = baseDir + "/temp/" + uniqueFileName;
-            File tempFile = backblazeB2Service.saveMultipartFileToTemp(audioFile, tempPath);
-
-            // Upload to Backblaze B2
-            String b2Path = "audio/projects/" + projectId + "/" + uniqueFileName;
-            backblazeB2Service.uploadFile(tempFile, b2Path);
-
-            // Clean up temporary file
-            Files.deleteIfExists(tempFile.toPath());
-
-            // Generate and save waveform JSON
-            String waveformJsonPath = generateAndSaveWaveformJson(b2Path, projectId);
+                    : projectId + "_" + System.currentTimeMillis() + "_" + i + "_" + originalFileName;
+            // Indexed so two files of one request never share a temp file, even with caller-supplied names
+            String tempPath = baseDir + "/temp/" + i + "_" + uniqueFileName;
+
+            tasks.add(() -> {
+                // Save to temporary file
+                File tempFile = backblazeB2Service.saveMultipartFileToTemp(audioFile, tempPath);
+
+                // Upload to Backblaze B2
+                String b2Path = "audio/projects/" + projectId + "/" + uniqueFileName;
+                try {
+                    backblazeB2Service.uploadFile(tempFile, b2Path);
+                } finally {
+                    Files.deleteIfExists(tempFile.toPath());
+                }
+                return newUploadedAsset(project, ProjectAsset.Type.AUDIO, b2Path, uniqueFileName);
+            });
+        }
 
-            try {
-                addAudio(project, b2Path, uniqueFileName, waveformJsonPath);
-            } catch (JsonProcessingException e) {
-                throw new IOException("Failed to process audio data for file: " + uniqueFileName, e);
-            }
+        try {
+            saveAssets(project, batchIngestExecutor.runAll(tasks, asset -> backblazeB2Service.deleteFile(asset.getPath())))
+                    .forEach(mediaIngestPipeline::submit);
+        } catch (JsonProcessingException e) {
+            throw new IOException("Failed to process audio data for project: " + projectId, e);
         }
 
         project.setLastModified(LocalDateTime.now());
@@ -1086,6 +1507,7 @@ public class VideoEditingService {
             }
 
             String audioPath = null;
+            String knownDuration = null;
             boolean isExtracted = false;
 
             // First, try to find the audio in audioJson
@@ -1097,6 +1519,7 @@ public class VideoEditingService {
 
             if (targetAudio != null) {
                 audioPath = targetAudio.get("audioPath");
+                knownDuration = targetAudio.get("durationSeconds");
             } else {
                 // Try extractedAudioJson
                 List<Map<String, String>> extractedAudios = getExtractedAudio(project);
@@ -1119,8 +1542,9 @@ public class VideoEditingService {
             // Round time fields to three decimal places
             startTime = roundToThreeDecimals(startTime);
             timelineStartTime = roundToThreeDecimals(timelineStartTime);
+            // Duration probed at ingest saves downloading the file again
             double calculatedEndTime = endTime != null ? roundToThreeDecimals(endTime) :
-                    roundToThreeDecimals(getAudioDuration(audioPath));
+                    roundToThreeDecimals(knownDuration != null ? Double.parseDouble(knownDuration) : getAudioDuration(audioPath));
             double calculatedTimelineEndTime = timelineEndTime != null ? roundToThreeDecimals(timelineEndTime) :
                     roundToThreeDecimals(timelineStartTime + (calculatedEndTime - startTime));
 
@@ -1197,7 +1621,7 @@ public class VideoEditingService {
             audioSegment.setWaveformJsonPath(waveformJsonPath);
 
             timelineState.getAudioSegments().add(audioSegment);
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
 
@@ -1214,9 +1638,7 @@ public class VideoEditingService {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = session.getTimelineState();
 
-            AudioSegment targetSegment = timelineState.getAudioSegments().stream()
-                    .filter(segment -> segment.getId().equals(audioSegmentId))
-                    .findFirst()
+            AudioSegment targetSegment = Optional.ofNullable(timelineState.getSegmentById(audioSegmentId, AudioSegment.class))
                     .orElseThrow(() -> new RuntimeException("Audio segment not found: " + audioSegmentId));
 
             double originalStartTime = targetSegment.getStartTime();
@@ -1330,22 +1752,21 @@ public class VideoEditingService {
                 throw new RuntimeException("Timeline position overlaps with an existing segment in layer " + targetSegment.getLayer());
             }
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         public void removeAudioSegment(String sessionId, String audioSegmentId) {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = session.getTimelineState();
 
-            boolean removed = timelineState.getAudioSegments().removeIf(
-                    segment -> segment.getId().equals(audioSegmentId)
-            );
-
-            if (!removed) {
+            AudioSegment target = timelineState.getSegmentById(audioSegmentId, AudioSegment.class);
+            if (target == null) {
                 throw new RuntimeException("Audio segment not found with ID: " + audioSegmentId);
             }
+            timelineState.getAudioSegments().remove(target);
+            timelineState.invalidateIndexes();
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
     public Project uploadImageToProject(User user, Long projectId, MultipartFile[] imageFiles, String[] imageFileNames) throws IOException, B2Exception {
@@ -1356,29 +1777,39 @@ public class VideoEditingService {
             throw new RuntimeException("Unauthorized to modify this project");
         }
 
+        List<BatchIngestExecutor.IngestTask<ProjectAsset>> tasks = new ArrayList<>();
         for (int i = 0; i < imageFiles.length; i++) {
             MultipartFile imageFile = imageFiles[i];
             String originalFileName = imageFile.getOriginalFilename();
             String uniqueFileName = (imageFileNames != null && i < imageFileNames.length && imageFileNames[i] != null)
                     ? imageFileNames[i]
-                    : projectId + "_" + System.currentTimeMillis() + "_" + originalFileName;
-
-            // Save to temporary file
-            String tempPath = baseDir + "/temp/" + uniqueFileName;
-            File tempFile = backblazeB2Service.saveMultipartFileToTemp(imageFile, tempPath);
-
-            // Upload to Backblaze B2
-            String b2Path = "images/projects/" + projectId + "/" + uniqueFileName;
-            backblazeB2Service.uploadFile(tempFile, b2Path);
-
-            // Clean up temporary file
-            Files.deleteIfExists(tempFile.toPath());
+                    : projectId + "_" + System.currentTimeMillis() + "_" + i + "_" + originalFileName;
+            // Indexed so two files of one request never share a temp file, even with caller-supplied names
+            String tempPath = baseDir + "/temp/" + i + "_" + uniqueFileName;
+
+            tasks.add(() -> {
+                // Save to temporary file
+                File tempFile = backblazeB2Service.saveMultipartFileToTemp(imageFile, tempPath);
+
+                // Upload to Backblaze B2
+                String b2Path = "images/projects/" + projectId + "/" + uniqueFileName;
+                try {
+                    backblazeB2Service.uploadFile(tempFile, b2Path);
+                } finally {
+                    Files.deleteIfExists(tempFile.toPath());
+                }
+                return newUploadedAsset(project, ProjectAsset.Type.IMAGE, b2Path, uniqueFileName);
+            });
+        }
 
-            try {
-                addImage(project, b2Path, uniqueFileName);
-            } catch (JsonProcessingException e) {
-                throw new IOException("Failed to process image data for file: " + uniqueFileName, e);
-            }
+        try {
+            saveAssets(project, batchIngestExecutor.runAll(tasks, asset -> backblazeB2Service.deleteFile(asset.getPath())))
+                    .forEach(mediaIngestPipeline::submit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Image upload interrupted for project: " + projectId, e);
+        } catch (JsonProcessingException e) {
+            throw new IOException("Failed to process image data for project: " + projectId, e);
         }
 
         project.setLastModified(LocalDateTime.now());
@@ -1493,16 +1924,29 @@ public class VideoEditingService {
             imageSegment.setCropR(0.0);
             imageSegment.setCropT(0.0);
 
-            try {
-                File imageFile = new File(baseDir, imagePath);
-                if (!imageFile.exists()) {
-                    throw new RuntimeException("Image file does not exist: " + imageFile.getAbsolutePath());
+            // Size recorded at ingest when there is one, otherwise read from the local file's header
+            ProjectAsset imageAsset = projectAssetRepository.findByTypeAndPathIn(ProjectAsset.Type.IMAGE, List.of(imagePath)).stream()
+                    .filter(asset -> asset.getWidth() != null && asset.getHeight() != null)
+                    .findFirst()
+                    .orElse(null);
+            if (imageAsset != null) {
+                imageSegment.setWidth(imageAsset.getWidth());
+                imageSegment.setHeight(imageAsset.getHeight());
+            } else {
+                try {
+                    File imageFile = new File(baseDir, imagePath);
+                    if (!imageFile.exists()) {
+                        throw new RuntimeException("Image file does not exist: " + imageFile.getAbsolutePath());
+                    }
+                    Dimension size = ImageProbe.dimensions(imageFile);
+                    if (size == null) {
+                        throw new RuntimeException("Unsupported image format: " + imageFile.getName());
+                    }
+                    imageSegment.setWidth(size.width);
+                    imageSegment.setHeight(size.height);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error reading image file: " + e.getMessage());
                 }
-                BufferedImage img = ImageIO.read(imageFile);
-                imageSegment.setWidth(img.getWidth());
-                imageSegment.setHeight(img.getHeight());
-            } catch (IOException e) {
-                throw new RuntimeException("Error reading image file: " + e.getMessage());
             }
 
             if (filters != null && !filters.isEmpty()) {
@@ -1516,6 +1960,7 @@ public class VideoEditingService {
             }
 
             timelineState.getImageSegments().add(imageSegment);
+            timelineState.invalidateIndexes();
             saveTimelineState(sessionId, timelineState);
         }
 
@@ -1541,9 +1986,7 @@ public class VideoEditingService {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = getTimelineState(sessionId);
 
-            ImageSegment targetSegment = timelineState.getImageSegments().stream()
-                    .filter(segment -> segment.getId().equals(imageSegmentId))
-                    .findFirst()
+            ImageSegment targetSegment = Optional.ofNullable(timelineState.getSegmentById(imageSegmentId, ImageSegment.class))
                     .orElseThrow(() -> new RuntimeException("Image segment not found: " + imageSegmentId));
 
             double originalTimelineStartTime = targetSegment.getTimelineStartTime();
@@ -1664,7 +2107,7 @@ public class VideoEditingService {
                 );
             }
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
             saveTimelineState(sessionId, timelineState);
         }
 
@@ -1672,16 +2115,17 @@ public class VideoEditingService {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = getTimelineState(sessionId);
 
-            boolean removed = timelineState.getImageSegments().removeIf(
-                    segment -> segment.getId().equals(segmentId)
-            );
-
-            if (!removed) {
+            ImageSegment target = timelineState.getSegmentById(segmentId, ImageSegment.class);
+            if (target == null) {
                 throw new RuntimeException("Image segment not found with ID: " + segmentId);
             }
+            timelineState.getImageSegments().remove(target);
 
-            timelineState.getFilters().removeIf(f -> f.getSegmentId().equals(segmentId));
-            session.setLastAccessTime(System.currentTimeMillis());
+            if (!timelineState.getFiltersForSegment(segmentId).isEmpty()) {
+                timelineState.getFilters().removeIf(f -> segmentId.equals(f.getSegmentId()));
+            }
+            timelineState.invalidateIndexes();
+            session.markModified();
             saveTimelineState(sessionId, timelineState);
         }
 
@@ -1691,7 +2135,7 @@ public class VideoEditingService {
                 throw new RuntimeException("Edit session not found: " + sessionId);
             }
             session.setTimelineState(timelineState);
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         public TimelineState getTimelineState(String sessionId) {
@@ -1708,37 +2152,29 @@ public class VideoEditingService {
             keyframe.setTime(roundToThreeDecimals(keyframe.getTime()));
             switch (segmentType.toLowerCase()) {
                 case "video":
-                    VideoSegment video = session.getTimelineState().getSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    VideoSegment video = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, VideoSegment.class))
                             .orElseThrow(() -> new RuntimeException("Video segment not found: " + segmentId));
                     video.addKeyframe(property, keyframe);
                     break;
                 case "image":
-                    ImageSegment image = session.getTimelineState().getImageSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    ImageSegment image = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, ImageSegment.class))
                             .orElseThrow(() -> new RuntimeException("Image segment not found: " + segmentId));
                     image.addKeyframe(property, keyframe);
                     break;
                 case "text":
-                    TextSegment text = session.getTimelineState().getTextSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    TextSegment text = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, TextSegment.class))
                             .orElseThrow(() -> new RuntimeException("Text segment not found: " + segmentId));
                     text.addKeyframe(property, keyframe);
                     break;
                 case "audio":
-                    AudioSegment audio = session.getTimelineState().getAudioSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    AudioSegment audio = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, AudioSegment.class))
                             .orElseThrow(() -> new RuntimeException("Audio segment not found: " + segmentId));
                     audio.addKeyframe(property, keyframe);
                     break;
                 default:
                     throw new IllegalArgumentException("Invalid segment type: " + segmentType);
             }
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         public void updateKeyframeToSegment(String sessionId, String segmentId, String segmentType, String property, Keyframe keyframe) {
@@ -1752,9 +2188,7 @@ public class VideoEditingService {
 
             switch (segmentType.toLowerCase()) {
                 case "video":
-                    VideoSegment video = session.getTimelineState().getSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    VideoSegment video = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, VideoSegment.class))
                             .orElseThrow(() -> new RuntimeException("Video segment not found: " + segmentId));
                     if (keyframe.getTime() > (video.getTimelineEndTime() - video.getTimelineStartTime())) {
                         throw new IllegalArgumentException("Keyframe time out of segment bounds for video segment");
@@ -1762,9 +2196,7 @@ public class VideoEditingService {
                     video.updateKeyframe(property, keyframe);
                     break;
                 case "image":
-                    ImageSegment image = session.getTimelineState().getImageSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    ImageSegment image = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, ImageSegment.class))
                             .orElseThrow(() -> new RuntimeException("Image segment not found: " + segmentId));
                     if (keyframe.getTime() > (image.getTimelineEndTime() - image.getTimelineStartTime())) {
                         throw new IllegalArgumentException("Keyframe time out of segment bounds for image segment");
@@ -1772,9 +2204,7 @@ public class VideoEditingService {
                     image.updateKeyframe(property, keyframe);
                     break;
                 case "text":
-                    TextSegment text = session.getTimelineState().getTextSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    TextSegment text = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, TextSegment.class))
                             .orElseThrow(() -> new RuntimeException("Text segment not found: " + segmentId));
                     if (keyframe.getTime() > (text.getTimelineEndTime() - text.getTimelineStartTime())) {
                         throw new IllegalArgumentException("Keyframe time out of segment bounds for text segment");
@@ -1782,9 +2212,7 @@ public class VideoEditingService {
                     text.updateKeyframe(property, keyframe);
                     break;
                 case "audio":
-                    AudioSegment audio = session.getTimelineState().getAudioSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    AudioSegment audio = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, AudioSegment.class))
                             .orElseThrow(() -> new RuntimeException("Audio segment not found: " + segmentId));
                     if (keyframe.getTime() > (audio.getTimelineEndTime() - audio.getTimelineStartTime())) {
                         throw new IllegalArgumentException("Keyframe time out of segment bounds for audio segment");
@@ -1794,7 +2222,7 @@ public class VideoEditingService {
                 default:
                     throw new IllegalArgumentException("Invalid segment type: " + segmentType);
             }
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         public void removeKeyframeFromSegment(String sessionId, String segmentId, String segmentType, String property, double time) {
@@ -1803,61 +2231,110 @@ public class VideoEditingService {
             time = roundToThreeDecimals(time);
             switch (segmentType.toLowerCase()) {
                 case "video":
-                    VideoSegment video = session.getTimelineState().getSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    VideoSegment video = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, VideoSegment.class))
                             .orElseThrow(() -> new RuntimeException("Video segment not found: " + segmentId));
                     video.removeKeyframe(property, time);
                     break;
                 case "image":
-                    ImageSegment image = session.getTimelineState().getImageSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    ImageSegment image = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, ImageSegment.class))
                             .orElseThrow(() -> new RuntimeException("Image segment not found: " + segmentId));
                     image.removeKeyframe(property, time);
                     break;
                 case "text":
-                    TextSegment text = session.getTimelineState().getTextSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    TextSegment text = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, TextSegment.class))
                             .orElseThrow(() -> new RuntimeException("Text segment not found: " + segmentId));
                     text.removeKeyframe(property, time);
                     break;
                 case "audio":
-                    AudioSegment audio = session.getTimelineState().getAudioSegments().stream()
-                            .filter(s -> s.getId().equals(segmentId))
-                            .findFirst()
+                    AudioSegment audio = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, AudioSegment.class))
                             .orElseThrow(() -> new RuntimeException("Audio segment not found: " + segmentId));
                     audio.removeKeyframe(property, time);
                     break;
                 default:
                     throw new IllegalArgumentException("Invalid segment type: " + segmentType);
             }
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
-    public void deleteProjectFiles(Long projectId) throws IOException {
-        try {
-            // Delete videos
-            String videoPrefix = "videos/projects/" + projectId + "/";
-            backblazeB2Service.deleteFile(videoPrefix);
-
-            // Delete audio and waveform JSON
-            String audioPrefix = "audio/projects/" + projectId + "/";
-            backblazeB2Service.deleteFile(audioPrefix);
+        // The property's curve sampled across the segment (times relative to its start), from the same
+        // KeyframeCurve the export compiles, so the editor preview matches the render
+        public Map<String, double[]> getKeyframeCurve(String sessionId, String segmentId, String segmentType, String property, int samples) {
+            EditSession session = getSession(sessionId);
+            if (samples < 2 || samples > 2000) {
+                throw new IllegalArgumentException("Samples must be between 2 and 2000");
+            }
+            Map<String, KeyframeTrack> keyframes;
+            double duration;
+            double staticValue;
+            switch (segmentType.toLowerCase()) {
+                case "video":
+                    VideoSegment video = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, VideoSegment.class))
+                            .orElseThrow(() -> new RuntimeException("Video segment not found: " + segmentId));
+                    keyframes = video.getKeyframes();
+                    duration = video.getTimelineEndTime() - video.getTimelineStartTime();
+                    staticValue = staticPropertyValue(property, video.getScale(), video.getOpacity(), video.getPositionX(), video.getPositionY());
+                    break;
+                case "image":
+                    ImageSegment image = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, ImageSegment.class))
+                            .orElseThrow(() -> new RuntimeException("Image segment not found: " + segmentId));
+                    keyframes = image.getKeyframes();
+                    duration = image.getTimelineEndTime() - image.getTimelineStartTime();
+                    staticValue = staticPropertyValue(property, image.getScale(), image.getOpacity(), image.getPositionX(), image.getPositionY());
+                    break;
+                case "text":
+                    TextSegment text = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, TextSegment.class))
+                            .orElseThrow(() -> new RuntimeException("Text segment not found: " + segmentId));
+                    keyframes = text.getKeyframes();
+                    duration = text.getTimelineEndTime() - text.getTimelineStartTime();
+                    staticValue = staticPropertyValue(property, text.getScale(), text.getOpacity(), text.getPositionX(), text.getPositionY());
+                    break;
+                case "audio":
+                    AudioSegment audio = Optional.ofNullable(session.getTimelineState().getSegmentById(segmentId, AudioSegment.class))
+                            .orElseThrow(() -> new RuntimeException("Audio segment not found: " + segmentId));
+                    keyframes = audio.getKeyframes();
+                    duration = audio.getTimelineEndTime() - audio.getTimelineStartTime();
+                    staticValue = "volume".equals(property) && audio.getVolume() != null ? audio.getVolume() : 1.0;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid segment type: " + segmentType);
+            }
+            KeyframeTrack propertyKeyframes = keyframes != null ? keyframes.get(property) : null;
+            return KeyframeCurve.of(propertyKeyframes).sample(0, Math.max(0, duration), samples, staticValue);
+        }
 
-            // Delete images
-            String imagePrefix = "images/projects/" + projectId + "/";
-            backblazeB2Service.deleteFile(imagePrefix);
+        // Value a visual property holds when it has no keyframes
+        private double staticPropertyValue(String property, Double scale, Double opacity, Integer positionX, Integer positionY) {
+            switch (property) {
+                case "scale":
+                    return scale != null ? scale : 1.0;
+                case "opacity":
+                    return opacity != null ? opacity : 1.0;
+                case "positionX":
+                    return positionX != null ? positionX : 0;
+                case "positionY":
+                    return positionY != null ? positionY : 0;
+                default:
+                    return 0;
+            }
+        }
 
-            // Delete exported videos
-            String exportPrefix = "exports/" + projectId + "/";
-            backblazeB2Service.deleteFile(exportPrefix);
+    public void deleteProjectFiles(Long projectId) throws IOException {
+        try {
+            // Whole prefixes: videos, audio (with waveforms and extracted audio), images, exports
+            backblazeB2Service.deleteDirectory("videos/projects/" + projectId + "/");
+            backblazeB2Service.deleteDirectory("audio/projects/" + projectId + "/");
+            backblazeB2Service.deleteDirectory("images/projects/" + projectId + "/");
+            backblazeB2Service.deleteDirectory("exports/" + projectId + "/");
         } catch (B2Exception e) {
             throw new IOException("Failed to delete project files from Backblaze B2", e);
         }
     }
 
+        // Drops the project_asset rows so the project row can be deleted
+        public void deleteProjectAssets(Long projectId) {
+            projectAssetRepository.deleteByProjectId(projectId);
+        }
+
         private void deleteDirectory(File directory) throws IOException {
             if (directory.isDirectory()) {
                 File[] files = directory.listFiles();
@@ -1917,9 +2394,8 @@ public class VideoEditingService {
             }
 
             // Check for overlapping transitions
-            for (Transition existingTransition : timelineState.getTransitions()) {
+            for (Transition existingTransition : timelineState.getTransitionsForSegment(segmentId)) {
                 if (existingTransition.getLayer() == layer &&
-                        existingTransition.getSegmentId().equals(segmentId) &&
                         existingTransition.isStart() == start &&
                         existingTransition.isEnd() == end &&
                         timelineStartTime < existingTransition.getTimelineStartTime() + existingTransition.getDuration() &&
@@ -1943,7 +2419,8 @@ public class VideoEditingService {
             }
 
             timelineState.getTransitions().add(transition);
-            session.setLastAccessTime(System.currentTimeMillis());
+            timelineState.invalidateIndexes();
+            session.markModified();
         }
 
         public Transition updateTransition(
@@ -1965,7 +2442,7 @@ public class VideoEditingService {
             TimelineState timelineState = session.getTimelineState();
 
             Transition transition = timelineState.getTransitions().stream()
-                    .filter(t -> t.getId().equals(transitionId))
+                    .filter(t -> transitionId.equals(t.getId()))
                     .findFirst()
                     .orElseThrow(() -> {
                         log.error("Transition not found: transitionId={}", transitionId);
@@ -2029,24 +2506,25 @@ public class VideoEditingService {
             }
             transition.setTimelineStartTime(timelineStartTime);
 
-            // Check for overlapping transitions
-            timelineState.getTransitions().remove(transition);
-            for (Transition existingTransition : timelineState.getTransitions()) {
+            // Check for overlapping transitions (segmentId may have changed, so refresh the index first)
+            timelineState.invalidateIndexes();
+            for (Transition existingTransition : timelineState.getTransitionsForSegment(transition.getSegmentId())) {
+                if (existingTransition == transition) {
+                    continue;
+                }
                 if (existingTransition.getLayer() == transition.getLayer() &&
-                        existingTransition.getSegmentId().equals(transition.getSegmentId()) &&
                         existingTransition.isStart() == transition.isStart() &&
                         existingTransition.isEnd() == transition.isEnd() &&
                         transition.getTimelineStartTime() < existingTransition.getTimelineStartTime() + existingTransition.getDuration() &&
                         transition.getTimelineStartTime() + transition.getDuration() > existingTransition.getTimelineStartTime()) {
-                    timelineState.getTransitions().add(transition);
                     rollbackTransition(transition, originalType, originalDuration, originalSegmentId, originalStart, originalEnd, originalLayer, originalTimelineStartTime, originalParameters);
+                    timelineState.invalidateIndexes();
                     throw new RuntimeException("Transition overlaps with an existing transition on layer " + transition.getLayer() +
                             " for segment " + transition.getSegmentId() + " at " + (transition.isStart() ? "start" : "end"));
                 }
             }
-            timelineState.getTransitions().add(transition);
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
             log.info("Transition updated successfully: id={}", transition.getId());
             return transition;
         }
@@ -2080,22 +2558,15 @@ public class VideoEditingService {
             if (!removed) {
                 throw new RuntimeException("Transition not found: " + transitionId);
             }
+            timelineState.invalidateIndexes();
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         // NEW: Helper method to find a segment by ID
         private Segment findSegment(TimelineState timelineState, String segmentId) {
-            for (VideoSegment segment : timelineState.getSegments()) {
-                if (segment.getId().equals(segmentId)) return segment;
-            }
-            for (ImageSegment segment : timelineState.getImageSegments()) {
-                if (segment.getId().equals(segmentId)) return segment;
-            }
-            for (TextSegment segment : timelineState.getTextSegments()) {
-                if (segment.getId().equals(segmentId)) return segment;
-            }
-            return null;
+            // Audio segments are indexed too but cannot carry transitions
+            return timelineState.getSegmentById(segmentId, Segment.class);
         }
 
         private void updateAssociatedTransitions(String sessionId, String segmentId, int newLayer, double newTimelineStartTime, double newTimelineEndTime) throws IOException {
@@ -2103,9 +2574,7 @@ public class VideoEditingService {
             TimelineState timelineState = session.getTimelineState();
 
             // Find transitions involving this segment
-            List<Transition> transitionsToUpdate = timelineState.getTransitions().stream()
-                    .filter(t -> segmentId.equals(t.getSegmentId()))
-                    .collect(Collectors.toList());
+            List<Transition> transitionsToUpdate = timelineState.getTransitionsForSegment(segmentId);
 
             for (Transition transition : transitionsToUpdate) {
                 // Update layer
@@ -2127,7 +2596,7 @@ public class VideoEditingService {
                 }
             }
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         private String generateWaveformImage(String audioPath, Long projectId, String uniqueFileName) throws IOException, InterruptedException {
@@ -2172,24 +2641,25 @@ public class VideoEditingService {
     public double getAudioDuration(Long projectId, String filename) throws IOException, InterruptedException, B2Exception {
         logger.info("Getting audio duration for projectId: {}, filename: {}", projectId, filename);
 
+        for (ProjectAsset.Type type : List.of(ProjectAsset.Type.AUDIO, ProjectAsset.Type.EXTRACTED_AUDIO)) {
+            for (ProjectAsset asset : projectAssetRepository.findByProjectIdAndType(projectId, type)) {
+                if (filename.equals(asset.getFileName()) && asset.getDurationSeconds() != null) {
+                    return asset.getDurationSeconds();
+                }
+            }
+        }
+
         // Construct possible B2 paths
         String directPath = "audio/projects/" + projectId + "/" + filename;
         String extractedPath = "audio/projects/" + projectId + "/extracted/" + filename;
 
-        String[] possiblePaths = {directPath, extractedPath};
         File tempFile = null;
         String tempPath = baseDir + "/temp/audio_" + System.currentTimeMillis() + "_" + filename;
 
-        // Try downloading from each path
-        for (String b2Path : possiblePaths) {
-            try {
-                tempFile = backblazeB2Service.downloadFile(b2Path, tempPath);
-                if (tempFile.exists()) {
-                    break;
-                }
-            } catch (B2Exception e) {
-                logger.debug("File not found at B2 path: {}", b2Path);
-            }
+        // Existence of both paths is checked concurrently (and cached); only the match is downloaded
+        Optional<String> b2Path = backblazeB2Service.findExisting(List.of(directPath, extractedPath));
+        if (b2Path.isPresent()) {
+            tempFile = backblazeB2Service.downloadFile(b2Path.get(), tempPath);
         }
 
         if (tempFile == null || !tempFile.exists()) {
@@ -2204,85 +2674,6 @@ public class VideoEditingService {
         }
     }
 
-    private String generateAndSaveWaveformJson(String audioPath, Long projectId) throws IOException, InterruptedException, B2Exception {
-        // Download audio from Backblaze B2
-        String tempAudioPath = baseDir + "/temp/waveform_" + System.currentTimeMillis() + ".mp3";
-        File audioFile = backblazeB2Service.downloadFile(audioPath, tempAudioPath);
-        if (!audioFile.exists()) {
-            throw new IOException("Audio file not found: " + audioFile.getAbsolutePath());
-        }
-
-        // Generate PCM data
-        File tempPcmFile = new File(baseDir, "temp/waveform_" + projectId + "_" + System.currentTimeMillis() + ".pcm");
-        File tempDir = new File(baseDir, "temp");
-        if (!tempDir.exists()) {
-            tempDir.mkdirs();
-        }
-
-        List<String> command = new ArrayList<>();
-        command.add(ffmpegPath);
-        command.add("-i");
-        command.add(audioFile.getAbsolutePath());
-        command.add("-f");
-        command.add("s16le");
-        command.add("-ac");
-        command.add("1");
-        command.add("-ar");
-        command.add("44100");
-        command.add("-y");
-        command.add(tempPcmFile.getAbsolutePath());
-
-        executeFFmpegCommand(command);
-
-        // Read PCM data and compute peaks
-        List<Float> peaks = new ArrayList<>();
-        try (FileInputStream fis = new FileInputStream(tempPcmFile)) {
-            byte[] buffer = new byte[4096];
-            int samplesPerPeak = 44100 / 100;
-            int sampleCount = 0;
-            float maxAmplitude = 0;
-
-            while (fis.read(buffer) != -1) {
-                for (int i = 0; i < buffer.length; i += 2) {
-                    short sample = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
-                    float amplitude = Math.abs(sample / 32768.0f);
-                    maxAmplitude = Math.max(maxAmplitude, amplitude);
-                    sampleCount++;
-
-                    if (sampleCount >= samplesPerPeak) {
-                        peaks.add(maxAmplitude);
-                        maxAmplitude = 0;
-                        sampleCount = 0;
-                    }
-                }
-            }
-            if (sampleCount > 0) {
-                peaks.add(maxAmplitude);
-            }
-        } finally {
-            Files.deleteIfExists(tempPcmFile.toPath());
-        }
-
-        // Create JSON structure
-        Map<String, Object> waveformData = new HashMap<>();
-        waveformData.put("sampleRate", 100);
-        waveformData.put("peaks", peaks);
-
-        // Save JSON to temporary file
-        String waveformFileName = "waveform_" + audioFile.getName().replaceAll("[^a-zA-Z0-9.]", "_") + ".json";
-        File waveformFile = new File(baseDir + "/temp/" + waveformFileName);
-        objectMapper.writeValue(waveformFile, waveformData);
-
-        // Upload to Backblaze B2
-        String b2WaveformPath = "audio/projects/" + projectId + "/waveforms/" + waveformFileName;
-        backblazeB2Service.uploadFile(waveformFile, b2WaveformPath);
-
-        // Clean up
-        Files.deleteIfExists(waveformFile.toPath());
-        Files.deleteIfExists(audioFile.toPath());
-
-        return b2WaveformPath;
-    }
     public String exportProject(String sessionId) throws IOException, InterruptedException, B2Exception {
         logger.info("Starting video export for session: {}", sessionId);
 
@@ -2331,14 +2722,20 @@ public class VideoEditingService {
         project.setLastModified(LocalDateTime.now());
         project.setExportedVideoPath(b2Path); // Store B2 path
 
+        long version = session.getVersion();
+        boolean timelineWritten = false;
         try {
-            project.setTimelineState(objectMapper.writeValueAsString(session.getTimelineState()));
+            timelineStateCodec.write(project, session.getTimelineState());
+            timelineWritten = true;
         } catch (JsonProcessingException e) {
             logger.error("Error saving timeline state for projectId: {}", project.getId(), e);
             // Continue with export
         }
 
         projectRepository.save(project);
+        if (timelineWritten) {
+            session.markSaved(version);
+        }
         logger.info("Project successfully exported to B2 path: {}", b2Path);
 
         return b2Path;
@@ -2381,10 +2778,50 @@ public class VideoEditingService {
         filterComplex.append("color=c=black:s=").append(canvasWidth).append("x").append(canvasHeight)
                 .append(":d=").append(totalDuration).append("[base];");
 
+        // Static captions are burned in by one ass filter after the overlays; the rest stay PNG overlays
+        Set<String> subtitleSegmentIds = assSubtitleRenderer.selectSegments(timelineState);
+        System.out.println("Rendering " + subtitleSegmentIds.size() + " of " + timelineState.getTextSegments().size()
+                + " text segments as ASS subtitles");
+
+        // Start every caption raster before the downloads below so both run at once.
+        // Cached PNGs are shared between exports, so they are not added to tempTextFiles.
+        Map<String, Future<File>> textRasters = new LinkedHashMap<>();
+        int rasterWidth = canvasWidth;
+        int rasterHeight = canvasHeight;
+        for (TextSegment ts : timelineState.getTextSegments()) {
+            if (ts.getText() == null || ts.getText().trim().isEmpty()) {
+                System.err.println("Skipping text segment " + ts.getId() + ": empty text");
+                continue;
+            }
+            if (subtitleSegmentIds.contains(ts.getId())) {
+                continue;
+            }
+            textRasters.put(ts.getId(), textRasterCache.submit(textRasterKey(ts, canvasWidth, canvasHeight),
+                    stagingDir -> generateTextPng(ts, stagingDir, rasterWidth, rasterHeight)));
+        }
+
+        // Static images and captions sharing a time window are drawn into one plate instead of one overlay each
+        Set<String> offChainTextIds = timelineState.getTextSegments().stream()
+                .map(TextSegment::getId)
+                .filter(id -> !textRasters.containsKey(id))
+                .collect(Collectors.toSet());
+        Map<String, StaticOverlayPlanner.Plate> platesBySegment = new HashMap<>();
+        for (StaticOverlayPlanner.Plate plate : staticOverlayPlanner.plan(timelineState, offChainTextIds)) {
+            plate.getMembers().forEach(member -> platesBySegment.put(member.getId(), plate));
+        }
+        Map<String, File> plateSources = new HashMap<>();
+
         for (VideoSegment vs : timelineState.getSegments()) {
             String tempPath = baseDir + "/temp/video_" + vs.getId() + "_" + System.currentTimeMillis() + ".mp4";
             File tempFile = backblazeB2Service.downloadFile(vs.getSourceVideoPath(), tempPath);
             tempInputFiles.add(tempFile);
+            // Seek and limit on the input so only the used part of the source is demuxed and decoded.
+            // Input seeking rebases timestamps to 0 at the seek point, so the filter chain trims 0:<duration>,
+            // not the segment's source start and end times.
+            command.add("-ss");
+            command.add(String.format("%.6f", vs.getStartTime()));
+            command.add("-t");
+            command.add(String.format("%.6f", vs.getEndTime() - vs.getStartTime()));
             command.add("-i");
             command.add(tempFile.getAbsolutePath());
             videoInputIndices.put(vs.getId(), String.valueOf(inputCount));
@@ -2392,14 +2829,40 @@ public class VideoEditingService {
             inputCount++;
         }
 
+        // Pre-scaled renditions from ingest, used when the segment never shows the image larger than the rendition
+        Map<String, ProjectAsset> imageAssets = new HashMap<>();
+        if (!timelineState.getImageSegments().isEmpty()) {
+            Set<String> imagePaths = timelineState.getImageSegments().stream()
+                    .map(ImageSegment::getImagePath)
+                    .collect(Collectors.toSet());
+            for (ProjectAsset asset : projectAssetRepository.findByTypeAndPathIn(ProjectAsset.Type.IMAGE, imagePaths)) {
+                if (asset.getRenditionPath() != null && asset.getWidth() != null) {
+                    imageAssets.put(asset.getPath(), asset);
+                }
+            }
+        }
+        // Image segment id -> source width / rendition width, folded into the overlay scale
+        Map<String, Double> imageInputScales = new HashMap<>();
+
         for (ImageSegment is : timelineState.getImageSegments()) {
             String tempPath = baseDir + "/temp/image_" + is.getId() + "_" + System.currentTimeMillis() + ".png";
-            File tempFile = backblazeB2Service.downloadFile(is.getImagePath(), tempPath);
+            String imageSource = is.getImagePath();
+            ProjectAsset imageAsset = imageAssets.get(is.getImagePath());
+            if (imageAsset != null) {
+                double defaultScale = is.getScale() != null ? is.getScale() : 1.0;
+                double maxScale = Math.max(defaultScale, KeyframeCurve.of(is.getKeyframes().get("scale")).max(defaultScale));
+                if (imageAsset.getWidth() * maxScale <= imageAsset.getRenditionWidth()) {
+                    imageSource = imageAsset.getRenditionPath();
+                    imageInputScales.put(is.getId(), imageAsset.getWidth() / (double) imageAsset.getRenditionWidth());
+                }
+            }
+            File tempFile = backblazeB2Service.downloadFile(imageSource, tempPath);
             tempInputFiles.add(tempFile);
-            command.add("-loop");
-            command.add("1");
-            command.add("-i");
-            command.add(tempFile.getAbsolutePath());
+            if (platesBySegment.containsKey(is.getId())) {
+                plateSources.put(is.getId(), tempFile);
+                continue;
+            }
+            addLoopedImageInput(command, tempFile, is.getTimelineEndTime() - is.getTimelineStartTime());
             videoInputIndices.put(is.getId(), String.valueOf(inputCount++));
         }
 
@@ -2412,18 +2875,40 @@ public class VideoEditingService {
             audioInputIndices.put(as.getId(), String.valueOf(inputCount++));
         }
 
-        for (TextSegment ts : timelineState.getTextSegments()) {
-            if (ts.getText() == null || ts.getText().trim().isEmpty()) {
-                System.err.println("Skipping text segment " + ts.getId() + ": empty text");
+        for (Map.Entry<String, Future<File>> raster : textRasters.entrySet()) {
+            File textPng = TextRasterCache.await(raster.getValue());
+            if (platesBySegment.containsKey(raster.getKey())) {
+                plateSources.put(raster.getKey(), textPng);
                 continue;
             }
-            String textPngPath = generateTextPng(ts, tempDir, canvasWidth, canvasHeight);
-            tempTextFiles.add(new File(textPngPath));
-            command.add("-loop");
-            command.add("1");
-            command.add("-i");
-            command.add(textPngPath);
-            textInputIndices.put(ts.getId(), String.valueOf(inputCount++));
+            TextSegment ts = timelineState.getSegmentById(raster.getKey(), TextSegment.class);
+            addLoopedImageInput(command, textPng, ts.getTimelineEndTime() - ts.getTimelineStartTime());
+            textInputIndices.put(raster.getKey(), String.valueOf(inputCount++));
+        }
+
+        Map<StaticOverlayPlanner.Plate, String> plateInputIndices = new HashMap<>();
+        for (StaticOverlayPlanner.Plate plate : new LinkedHashSet<>(platesBySegment.values())) {
+            try {
+                File plateFile = staticOverlayPlanner.composite(plate, plateSources, imageInputScales, canvasWidth, canvasHeight, tempDir);
+                tempTextFiles.add(plateFile);
+                addLoopedImageInput(command, plateFile, plate.getEnd() - plate.getStart());
+                plateInputIndices.put(plate, String.valueOf(inputCount++));
+                System.out.println("Pre-composited " + plate.getMembers().size() + " static overlays between t="
+                        + plate.getStart() + " and t=" + plate.getEnd());
+            } catch (IOException e) {
+                // Members go back to their own overlays
+                System.err.println("Failed to pre-composite static overlays, rendering them separately: " + e.getMessage());
+                for (Segment member : plate.getMembers()) {
+                    platesBySegment.remove(member.getId());
+                    addLoopedImageInput(command, plateSources.get(member.getId()),
+                            member.getTimelineEndTime() - member.getTimelineStartTime());
+                    if (member instanceof ImageSegment) {
+                        videoInputIndices.put(member.getId(), String.valueOf(inputCount++));
+                    } else {
+                        textInputIndices.put(member.getId(), String.valueOf(inputCount++));
+                    }
+                }
+            }
         }
 
             List<Object> allSegments = new ArrayList<>();
@@ -2444,12 +2929,29 @@ public class VideoEditingService {
             for (Object segment : allSegments) {
                 String outputLabel = "ov" + overlayCount++;
 
+                // A plate is drawn where its first member sits in the stacking order; the other members are inside it
+                StaticOverlayPlanner.Plate plate = platesBySegment.get(((Segment) segment).getId());
+                if (plate != null) {
+                    if (plate.getMembers().get(0) == segment) {
+                        double plateDuration = plate.getEnd() - plate.getStart();
+                        filterComplex.append("[").append(plateInputIndices.get(plate)).append(":v]");
+                        filterComplex.append("trim=0:").append(String.format("%.6f", plateDuration)).append(",");
+                        filterComplex.append("setpts=PTS-STARTPTS+").append(plate.getStart()).append("/TB[scaled").append(outputLabel).append("];");
+                        filterComplex.append("[").append(lastOutput).append("][scaled").append(outputLabel).append("]");
+                        filterComplex.append("overlay=0:0:format=auto:eof_action=pass");
+                        filterComplex.append(":enable='between(t,").append(plate.getStart()).append(",").append(plate.getEnd()).append(")'");
+                        filterComplex.append("[ov").append(outputLabel).append("];");
+                        lastOutput = "ov" + outputLabel;
+                    }
+                    continue;
+                }
+
                 if (segment instanceof VideoSegment) {
                     VideoSegment vs = (VideoSegment) segment;
                     String inputIdx = videoInputIndices.get(vs.getId());
 
                     filterComplex.append("[").append(inputIdx).append(":v]");
-                    filterComplex.append("trim=").append(vs.getStartTime()).append(":").append(vs.getEndTime()).append(",");
+                    filterComplex.append("trim=0:").append(String.format("%.6f", vs.getEndTime() - vs.getStartTime())).append(",");
                     // Apply speed adjustment
                     double speed = vs.getSpeed() != null ? vs.getSpeed() : 1.0;
                     double speedFactor = 1.0 / speed; // Inverse for setpts: speed > 1 means faster (shorter), speed < 1 means slower (longer)
@@ -2471,9 +2973,7 @@ public class VideoEditingService {
                     }
 
                     // Apply filters
-                    List<Filter> segmentFilters = timelineState.getFilters().stream()
-                            .filter(f -> f.getSegmentId().equals(vs.getId()))
-                            .collect(Collectors.toList());
+                    List<Filter> segmentFilters = timelineState.getFiltersForSegment(vs.getId());
                     boolean hasVignette = false;
                     double vignetteValue = 0.0;
 
@@ -2614,8 +3114,7 @@ public class VideoEditingService {
                     filterComplex.append("format=yuv420p,");
 
                     // Apply transitions and get position and crop parameters
-                    List<Transition> relevantTransitions = timelineState.getTransitions().stream()
-                            .filter(t -> t.getSegmentId() != null && t.getSegmentId().equals(vs.getId()))
+                    List<Transition> relevantTransitions = timelineState.getTransitionsForSegment(vs.getId()).stream()
                             .filter(t -> t.getLayer() == vs.getLayer())
                             .collect(Collectors.toList());
 
@@ -2642,23 +3141,13 @@ public class VideoEditingService {
                                 ", enabled between t=" + transStart + " and t=" + transEnd);
                     }
 
-                    // Apply rotation from transition
-                    String rotationExpr = transitionOffsets.get("rotation");
-                    if (rotationExpr != null && !rotationExpr.equals("0")) {
-                        filterComplex.append("format=rgba,");
-                        filterComplex.append("rotate='").append(rotationExpr).append("':ow='hypot(iw,ih)':oh='hypot(iw,ih)':c=none,");
-                        filterComplex.append("format=rgba,");
-                        System.out.println("Rotation applied to segment " + vs.getId() + ": " + rotationExpr);
-                    }
+                    // Apply rotation from transition and rotation keyframes
+                    appendRotationFilter(filterComplex, transitionOffsets.get("rotation"), vs.getKeyframes().get("rotation"),
+                            vs.getTimelineStartTime(), vs.getId());
 
-                    // Apply opacity
-                    double opacity = vs.getOpacity() != null ? vs.getOpacity() : 1.0;
-                    if (opacity < 1.0) {
-                        filterComplex.append("format=rgba,");
-                        filterComplex.append("lutrgb=a='val*").append(String.format("%.6f", opacity)).append("',");
-                        filterComplex.append("format=rgba,");
-                        System.out.println("Opacity applied to video segment " + vs.getId() + ": " + opacity);
-                    }
+                    // Apply opacity, static or keyframed
+                    appendOpacityFilter(filterComplex, vs.getOpacity(), vs.getKeyframes().get("opacity"),
+                            vs.getTimelineStartTime(), vs.getTimelineEndTime(), outputLabel, tempDir, tempTextFiles);
 
                     // Create a pad filter to maintain original dimensions
                     if (cropL > 0 || cropR > 0 || cropT > 0 || cropB > 0) {
@@ -2687,33 +3176,9 @@ public class VideoEditingService {
                     }
 
                     // Handle scaling with keyframes
-                    StringBuilder scaleExpr = new StringBuilder();
-                    List<Keyframe> scaleKeyframes = vs.getKeyframes().getOrDefault("scale", new ArrayList<>());
                     double defaultScale = vs.getScale() != null ? vs.getScale() : 1.0;
-
-                    if (!scaleKeyframes.isEmpty()) {
-                        Collections.sort(scaleKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) scaleKeyframes.get(0).getValue()).doubleValue();
-                        scaleExpr.append(String.format("%.6f", firstKfValue));
-                        for (int j = 1; j < scaleKeyframes.size(); j++) {
-                            Keyframe prevKf = scaleKeyframes.get(j - 1);
-                            Keyframe kf = scaleKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = vs.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = vs.getTimelineStartTime() + kfTime;
-                                scaleExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        scaleExpr.append(String.format("%.6f", defaultScale));
-                    }
+                    StringBuilder scaleExpr = new StringBuilder(KeyframeCurve.of(vs.getKeyframes().get("scale"))
+                            .toExpression(vs.getTimelineStartTime(), defaultScale));
 
                     // Apply transition scale multiplier
                     String transitionScale = transitionOffsets.get("scale");
@@ -2724,34 +3189,10 @@ public class VideoEditingService {
                     filterComplex.append("scale=w='iw*").append(scaleExpr).append("':h='ih*").append(scaleExpr).append("':eval=frame[scaled").append(outputLabel).append("];");
 
                     // Handle position X with keyframes
-                    StringBuilder xExpr = new StringBuilder();
-                    List<Keyframe> posXKeyframes = vs.getKeyframes().getOrDefault("positionX", new ArrayList<>());
                     Integer defaultPosX = vs.getPositionX();
                     double baseX = defaultPosX != null ? defaultPosX : 0;
-
-                    if (!posXKeyframes.isEmpty()) {
-                        Collections.sort(posXKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) posXKeyframes.get(0).getValue()).doubleValue();
-                        xExpr.append(String.format("%.6f", firstKfValue));
-                        for (int j = 1; j < posXKeyframes.size(); j++) {
-                            Keyframe prevKf = posXKeyframes.get(j - 1);
-                            Keyframe kf = posXKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = vs.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = vs.getTimelineStartTime() + kfTime;
-                                xExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        xExpr.append(String.format("%.6f", baseX));
-                    }
+                    StringBuilder xExpr = new StringBuilder(KeyframeCurve.of(vs.getKeyframes().get("positionX"))
+                            .toExpression(vs.getTimelineStartTime(), baseX));
 
                     // Add transition offset for x
                     String xTransitionOffset = transitionOffsets.get("x");
@@ -2761,34 +3202,10 @@ public class VideoEditingService {
                     xExpr.insert(0, "(W/2)+(").append(")-(w/2)");
 
                     // Handle position Y with keyframes
-                    StringBuilder yExpr = new StringBuilder();
-                    List<Keyframe> posYKeyframes = vs.getKeyframes().getOrDefault("positionY", new ArrayList<>());
                     Integer defaultPosY = vs.getPositionY();
                     double baseY = defaultPosY != null ? defaultPosY : 0;
-
-                    if (!posYKeyframes.isEmpty()) {
-                        Collections.sort(posYKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) posYKeyframes.get(0).getValue()).doubleValue();
-                        yExpr.append(String.format("%.6f", firstKfValue));
-                        for (int j = 1; j < posYKeyframes.size(); j++) {
-                            Keyframe prevKf = posYKeyframes.get(j - 1);
-                            Keyframe kf = posYKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = vs.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = vs.getTimelineStartTime() + kfTime;
-                                yExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        yExpr.append(String.format("%.6f", baseY));
-                    }
+                    StringBuilder yExpr = new StringBuilder(KeyframeCurve.of(vs.getKeyframes().get("positionY"))
+                            .toExpression(vs.getTimelineStartTime(), baseY));
 
                     // Add transition offset for y
                     String yTransitionOffset = transitionOffsets.get("y");
@@ -2799,7 +3216,7 @@ public class VideoEditingService {
 
                     // Overlay the scaled video onto the previous output
                     filterComplex.append("[").append(lastOutput).append("][scaled").append(outputLabel).append("]");
-                    filterComplex.append("overlay=x='").append(xExpr).append("':y='").append(yExpr).append("':format=auto");
+                    filterComplex.append("overlay=x='").append(xExpr).append("':y='").append(yExpr).append("':format=auto:eof_action=pass");
                     filterComplex.append(":enable='between(t,").append(vs.getTimelineStartTime()).append(",").append(vs.getTimelineEndTime()).append(")'");
                     filterComplex.append("[ov").append(outputLabel).append("];");
                     System.out.println("Video segment filter chain for " + vs.getId() + ": " +
@@ -2855,9 +3272,7 @@ public class VideoEditingService {
                     }
 
                     // Apply filters
-                    List<Filter> segmentFilters = timelineState.getFilters().stream()
-                            .filter(f -> f.getSegmentId().equals(is.getId()))
-                            .collect(Collectors.toList());
+                    List<Filter> segmentFilters = timelineState.getFiltersForSegment(is.getId());
                     boolean hasVignette = false;
                     double vignetteValue = 0.0;
 
@@ -2997,8 +3412,7 @@ public class VideoEditingService {
                     filterComplex.append("format=yuv420p,");
 
                     // Apply transitions and get position and crop parameters
-                    List<Transition> relevantTransitions = timelineState.getTransitions().stream()
-                            .filter(t -> t.getSegmentId() != null && t.getSegmentId().equals(is.getId()))
+                    List<Transition> relevantTransitions = timelineState.getTransitionsForSegment(is.getId()).stream()
                             .filter(t -> t.getLayer() == is.getLayer())
                             .collect(Collectors.toList());
 
@@ -3025,52 +3439,18 @@ public class VideoEditingService {
                                 ", enabled between t=" + transStart + " and t=" + transEnd);
                     }
 
-                    // Apply rotation from transition
-                    String rotationExpr = transitionOffsets.get("rotation");
-                    if (rotationExpr != null && !rotationExpr.equals("0")) {
-                        filterComplex.append("format=rgba,");
-                        filterComplex.append("rotate='").append(rotationExpr).append("':ow='hypot(iw,ih)':oh='hypot(iw,ih)':c=none,");
-                        filterComplex.append("format=rgba,");
-                        System.out.println("Rotation applied to segment " + is.getId() + ": " + rotationExpr);
-                    }
+                    // Apply rotation from transition and rotation keyframes
+                    appendRotationFilter(filterComplex, transitionOffsets.get("rotation"), is.getKeyframes().get("rotation"),
+                            is.getTimelineStartTime(), is.getId());
 
-                    // Apply opacity
-                    double opacity = is.getOpacity() != null ? is.getOpacity() : 1.0;
-                    if (opacity < 1.0) {
-                        filterComplex.append("format=rgba,");
-                        filterComplex.append("lutrgb=a='val*").append(String.format("%.6f", opacity)).append("',");
-                        filterComplex.append("format=rgba,");
-                        System.out.println("Opacity applied to image segment " + is.getId() + ": " + opacity);
-                    }
+                    // Apply opacity, static or keyframed
+                    appendOpacityFilter(filterComplex, is.getOpacity(), is.getKeyframes().get("opacity"),
+                            is.getTimelineStartTime(), is.getTimelineEndTime(), outputLabel, tempDir, tempTextFiles);
 
                     // Handle scaling with keyframes
-                    StringBuilder scaleExpr = new StringBuilder();
-                    List<Keyframe> scaleKeyframes = is.getKeyframes().getOrDefault("scale", new ArrayList<>());
                     double defaultScale = is.getScale() != null ? is.getScale() : 1.0;
-
-                    if (!scaleKeyframes.isEmpty()) {
-                        Collections.sort(scaleKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) scaleKeyframes.get(0).getValue()).doubleValue();
-                        scaleExpr.append(String.format("%.6f", firstKfValue));
-                        for (int j = 1; j < scaleKeyframes.size(); j++) {
-                            Keyframe prevKf = scaleKeyframes.get(j - 1);
-                            Keyframe kf = scaleKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = is.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = is.getTimelineStartTime() + kfTime;
-                                scaleExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        scaleExpr.append(String.format("%.6f", defaultScale));
-                    }
+                    StringBuilder scaleExpr = new StringBuilder(KeyframeCurve.of(is.getKeyframes().get("scale"))
+                            .toExpression(is.getTimelineStartTime(), defaultScale));
 
                     // Apply transition scale multiplier
                     String transitionScale = transitionOffsets.get("scale");
@@ -3078,37 +3458,19 @@ public class VideoEditingService {
                         scaleExpr.insert(0, "(").append(")*(").append(transitionScale).append(")");
                     }
 
+                    // A rendition input is smaller than the source, so scale it as if it were the original
+                    Double inputScale = imageInputScales.get(is.getId());
+                    if (inputScale != null) {
+                        scaleExpr.insert(0, "(").append(")*").append(String.format("%.6f", inputScale));
+                    }
+
                     filterComplex.append("scale=w='iw*").append(scaleExpr).append("':h='ih*").append(scaleExpr).append("':eval=frame[scaled").append(outputLabel).append("];");
 
                     // Handle position X with keyframes
-                    StringBuilder xExpr = new StringBuilder();
-                    List<Keyframe> posXKeyframes = is.getKeyframes().getOrDefault("positionX", new ArrayList<>());
                     Integer defaultPosX = is.getPositionX();
                     double baseX = defaultPosX != null ? defaultPosX : 0;
-
-                    if (!posXKeyframes.isEmpty()) {
-                        Collections.sort(posXKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) posXKeyframes.get(0).getValue()).doubleValue();
-                        xExpr.append(String.format("%.6f", firstKfValue));
-                        for (int j = 1; j < posXKeyframes.size(); j++) {
-                            Keyframe prevKf = posXKeyframes.get(j - 1);
-                            Keyframe kf = posXKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = is.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = is.getTimelineStartTime() + kfTime;
-                                xExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        xExpr.append(String.format("%.6f", baseX));
-                    }
+                    StringBuilder xExpr = new StringBuilder(KeyframeCurve.of(is.getKeyframes().get("positionX"))
+                            .toExpression(is.getTimelineStartTime(), baseX));
 
                     // Add transition offset for x
                     String xTransitionOffset = transitionOffsets.get("x");
@@ -3118,34 +3480,10 @@ public class VideoEditingService {
                     xExpr.insert(0, "(W/2)+(").append(")-(w/2)");
 
                     // Handle position Y with keyframes
-                    StringBuilder yExpr = new StringBuilder();
-                    List<Keyframe> posYKeyframes = is.getKeyframes().getOrDefault("positionY", new ArrayList<>());
                     Integer defaultPosY = is.getPositionY();
                     double baseY = defaultPosY != null ? defaultPosY : 0;
-
-                    if (!posYKeyframes.isEmpty()) {
-                        Collections.sort(posYKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) posYKeyframes.get(0).getValue()).doubleValue();
-                        yExpr.append(String.format("%.6f", firstKfValue));
-                        for (int j = 1; j < posYKeyframes.size(); j++) {
-                            Keyframe prevKf = posYKeyframes.get(j - 1);
-                            Keyframe kf = posYKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = is.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = is.getTimelineStartTime() + kfTime;
-                                yExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        yExpr.append(String.format("%.6f", baseY));
-                    }
+                    StringBuilder yExpr = new StringBuilder(KeyframeCurve.of(is.getKeyframes().get("positionY"))
+                            .toExpression(is.getTimelineStartTime(), baseY));
 
                     // Add transition offset for y
                     String yTransitionOffset = transitionOffsets.get("y");
@@ -3156,7 +3494,7 @@ public class VideoEditingService {
 
                     // Overlay the scaled image onto the previous output
                     filterComplex.append("[").append(lastOutput).append("][scaled").append(outputLabel).append("]");
-                    filterComplex.append("overlay=x='").append(xExpr).append("':y='").append(yExpr).append("':format=auto");
+                    filterComplex.append("overlay=x='").append(xExpr).append("':y='").append(yExpr).append("':format=auto:eof_action=pass");
                     filterComplex.append(":enable='between(t,").append(is.getTimelineStartTime()).append(",").append(is.getTimelineEndTime()).append(")'");
                     filterComplex.append("[ov").append(outputLabel).append("];");
                     System.out.println("Image segment filter chain for " + is.getId() + ": " +
@@ -3164,6 +3502,9 @@ public class VideoEditingService {
                     lastOutput = "ov" + outputLabel;
                 } else if (segment instanceof TextSegment) {
                     TextSegment ts = (TextSegment) segment;
+                    if (subtitleSegmentIds.contains(ts.getId())) {
+                        continue;
+                    }
                     String inputIdx = textInputIndices.get(ts.getId());
                     if (inputIdx == null) {
                         System.err.println("Skipping text segment " + ts.getId() + ": no valid PNG input");
@@ -3171,8 +3512,7 @@ public class VideoEditingService {
                     }
 
                     // Apply transitions and get position and crop parameters
-                    List<Transition> relevantTransitions = timelineState.getTransitions().stream()
-                            .filter(t -> t.getSegmentId() != null && t.getSegmentId().equals(ts.getId()))
+                    List<Transition> relevantTransitions = timelineState.getTransitionsForSegment(ts.getId()).stream()
                             .filter(t -> t.getLayer() == ts.getLayer())
                             .collect(Collectors.toList());
 
@@ -3205,69 +3545,28 @@ public class VideoEditingService {
                                 ", enabled between t=" + transStart + " and t=" + transEnd);
                     }
 
-                    // Apply rotation from transition
-                    String rotationExpr = transitionOffsets.get("rotation");
-                    if (rotationExpr != null && !rotationExpr.equals("0")) {
-                        filterComplex.append("format=rgba,");
-                        filterComplex.append("rotate='").append(rotationExpr).append("':ow='hypot(iw,ih)':oh='hypot(iw,ih)':c=none,");
-                        filterComplex.append("format=rgba,");
-                        System.out.println("Rotation applied to text segment " + ts.getId() + ": " + rotationExpr);
-                    }
+                    // Apply rotation from transition and rotation keyframes
+                    appendRotationFilter(filterComplex, transitionOffsets.get("rotation"), ts.getKeyframes().get("rotation"),
+                            ts.getTimelineStartTime(), ts.getId());
 
-                    // Apply opacity
-                    double opacity = ts.getOpacity() != null ? ts.getOpacity() : 1.0;
-                    if (opacity < 1.0) {
-                        filterComplex.append("format=rgba,");
-                        filterComplex.append("lutrgb=a='val*").append(String.format("%.6f", opacity)).append("',");
-                        filterComplex.append("format=rgba,");
-                        System.out.println("Opacity applied to text segment " + ts.getId() + ": " + opacity);
-                    }
+                    // Apply opacity, static or keyframed
+                    appendOpacityFilter(filterComplex, ts.getOpacity(), ts.getKeyframes().get("opacity"),
+                            ts.getTimelineStartTime(), ts.getTimelineEndTime(), outputLabel, tempDir, tempTextFiles);
 
                     // Handle scaling with keyframes
-                    StringBuilder scaleExpr = new StringBuilder();
-                    List<Keyframe> scaleKeyframes = ts.getKeyframes().getOrDefault("scale", new ArrayList<>());
+                    KeyframeCurve scaleCurve = KeyframeCurve.of(ts.getKeyframes().get("scale"));
                     double defaultScale = ts.getScale() != null ? ts.getScale() : 1.0;
 
                     // Determine maximum scale used in PNG generation (must match generateTextPng)
-                    double maxScale = defaultScale;
-                    if (!scaleKeyframes.isEmpty()) {
-                        maxScale = Math.max(
-                                defaultScale,
-                                scaleKeyframes.stream()
-                                        .mapToDouble(kf -> ((Number) kf.getValue()).doubleValue())
-                                        .max()
-                                        .orElse(defaultScale)
-                        );
-                    }
+                    double maxScale = Math.max(defaultScale, scaleCurve.max(defaultScale));
 
                     // Apply resolution multiplier to scale down high-resolution PNG (must match generateTextPng)
                     double resolutionMultiplier = canvasWidth >= 3840 ? 1.5 : 2.0;
                     double baseScale = 1.0 / resolutionMultiplier; // Base scale accounts for resolution multiplier only
 
-                    // Build the scale expression for keyframes
-                    if (!scaleKeyframes.isEmpty()) {
-                        Collections.sort(scaleKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) scaleKeyframes.get(0).getValue()).doubleValue();
-                        scaleExpr.append(String.format("%.6f", firstKfValue / maxScale)); // Normalize by maxScale
-                        for (int j = 1; j < scaleKeyframes.size(); j++) {
-                            Keyframe prevKf = scaleKeyframes.get(j - 1);
-                            Keyframe kf = scaleKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = ts.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = ts.getTimelineStartTime() + kfTime;
-                                scaleExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue / maxScale))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        scaleExpr.append(String.format("%.6f", defaultScale / maxScale)); // Normalize by maxScale
-                    }
+                    // The PNG is rendered at maxScale, so the curve is normalized by it
+                    StringBuilder scaleExpr = new StringBuilder(scaleCurve.scaled(1.0 / maxScale)
+                            .toExpression(ts.getTimelineStartTime(), defaultScale / maxScale));
 
                     // Apply transition scale multiplier
                     String transitionScale = transitionOffsets.get("scale");
@@ -3280,34 +3579,10 @@ public class VideoEditingService {
                             .append("':flags=lanczos:force_original_aspect_ratio=decrease:eval=frame[scaled").append(outputLabel).append("];");
 
                     // Handle position X with keyframes
-                    StringBuilder xExpr = new StringBuilder();
-                    List<Keyframe> posXKeyframes = ts.getKeyframes().getOrDefault("positionX", new ArrayList<>());
                     Integer defaultPosX = ts.getPositionX();
                     double baseX = defaultPosX != null ? defaultPosX : 0;
-
-                    if (!posXKeyframes.isEmpty()) {
-                        Collections.sort(posXKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) posXKeyframes.get(0).getValue()).doubleValue();
-                        xExpr.append(String.format("%.6f", firstKfValue));
-                        for (int j = 1; j < posXKeyframes.size(); j++) {
-                            Keyframe prevKf = posXKeyframes.get(j - 1);
-                            Keyframe kf = posXKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = ts.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = ts.getTimelineStartTime() + kfTime;
-                                xExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        xExpr.append(String.format("%.6f", baseX));
-                    }
+                    StringBuilder xExpr = new StringBuilder(KeyframeCurve.of(ts.getKeyframes().get("positionX"))
+                            .toExpression(ts.getTimelineStartTime(), baseX));
 
                     // Add transition offset for x
                     String xTransitionOffset = transitionOffsets.get("x");
@@ -3317,34 +3592,10 @@ public class VideoEditingService {
                     xExpr.insert(0, "(W/2)+(").append(")-(w/2)");
 
                     // Handle position Y with keyframes
-                    StringBuilder yExpr = new StringBuilder();
-                    List<Keyframe> posYKeyframes = ts.getKeyframes().getOrDefault("positionY", new ArrayList<>());
                     Integer defaultPosY = ts.getPositionY();
                     double baseY = defaultPosY != null ? defaultPosY : 0;
-
-                    if (!posYKeyframes.isEmpty()) {
-                        Collections.sort(posYKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                        double firstKfValue = ((Number) posYKeyframes.get(0).getValue()).doubleValue();
-                        yExpr.append(String.format("%.6f", firstKfValue));
-                        for (int j = 1; j < posYKeyframes.size(); j++) {
-                            Keyframe prevKf = posYKeyframes.get(j - 1);
-                            Keyframe kf = posYKeyframes.get(j);
-                            double prevTime = prevKf.getTime();
-                            double kfTime = kf.getTime();
-                            double prevValue = ((Number) prevKf.getValue()).doubleValue();
-                            double kfValue = ((Number) kf.getValue()).doubleValue();
-
-                            if (kfTime > prevTime) {
-                                double timelinePrevTime = ts.getTimelineStartTime() + prevTime;
-                                double timelineKfTime = ts.getTimelineStartTime() + kfTime;
-                                yExpr.insert(0, "lerp(").append(",").append(String.format("%.6f", kfValue))
-                                        .append(",min(1,max(0,(t-").append(String.format("%.6f", timelinePrevTime)).append(")/(")
-                                        .append(String.format("%.6f", timelineKfTime)).append("-").append(String.format("%.6f", timelinePrevTime)).append("))))");
-                            }
-                        }
-                    } else {
-                        yExpr.append(String.format("%.6f", baseY));
-                    }
+                    StringBuilder yExpr = new StringBuilder(KeyframeCurve.of(ts.getKeyframes().get("positionY"))
+                            .toExpression(ts.getTimelineStartTime(), baseY));
 
                     // Add transition offset for y
                     String yTransitionOffset = transitionOffsets.get("y");
@@ -3355,7 +3606,7 @@ public class VideoEditingService {
 
                     // Overlay the scaled text PNG onto the previous output
                     filterComplex.append("[").append(lastOutput).append("][scaled").append(outputLabel).append("]");
-                    filterComplex.append("overlay=x='").append(xExpr).append("':y='").append(yExpr).append("':format=auto");
+                    filterComplex.append("overlay=x='").append(xExpr).append("':y='").append(yExpr).append("':format=auto:eof_action=pass");
                     filterComplex.append(":enable='between(t,").append(ts.getTimelineStartTime()).append(",").append(ts.getTimelineEndTime()).append(")'");
                     filterComplex.append("[ov").append(outputLabel).append("];");
                     System.out.println("Text segment filter chain for " + ts.getId() + ": " +
@@ -3364,6 +3615,15 @@ public class VideoEditingService {
                 }
             }
 
+            if (!subtitleSegmentIds.isEmpty()) {
+                File assScript = assSubtitleRenderer.writeScript(timelineState, subtitleSegmentIds, canvasWidth, canvasHeight, tempDir);
+                tempTextFiles.add(assScript);
+                filterComplex.append("[").append(lastOutput).append("]")
+                        .append(assSubtitleRenderer.filter(timelineState, subtitleSegmentIds, assScript, tempTextFiles))
+                        .append("[subs];");
+                lastOutput = "subs";
+            }
+
             List<String> audioOutputs = new ArrayList<>();
             int audioCount = 0;
 
@@ -3419,74 +3679,25 @@ public class VideoEditingService {
                 filterComplex.append("asetpts=PTS-STARTPTS");
 
                 // Apply volume with keyframes
-                List<Keyframe> volumeKeyframes = as.getKeyframes().getOrDefault("volume", new ArrayList<>());
+                KeyframeTrack volumeKeyframes = as.getKeyframes().getOrDefault("volume", new KeyframeTrack());
                 double defaultVolume = as.getVolume() != null ? as.getVolume() : 1.0;
 
                 System.out.println("Processing audio segment " + as.getId() + " with " + volumeKeyframes.size() + " volume keyframes");
                 if (!volumeKeyframes.isEmpty()) {
-                    Collections.sort(volumeKeyframes, Comparator.comparingDouble(Keyframe::getTime));
-                    double finalTimelineDuration = timelineDuration;
-                    List<Keyframe> validKeyframes = volumeKeyframes.stream()
-                            .filter(kf -> {
-                                double time = kf.getTime();
-                                double value = ((Number) kf.getValue()).doubleValue();
-                                boolean valid = time >= 0 && time <= finalTimelineDuration && value >= 0 && value <= 15;
-                                if (!valid) {
-                                    System.err.println("Invalid keyframe for audio segment " + as.getId() + ": time=" + time + ", value=" + value);
-                                }
-                                return valid;
-                            })
-                            .collect(Collectors.toList());
-
-                    if (!validKeyframes.isEmpty()) {
-                        StringBuilder volumeExpr = new StringBuilder("volume=");
-                        double lastValue = ((Number) validKeyframes.get(validKeyframes.size() - 1).getValue()).doubleValue();
-                        double lastTime = validKeyframes.get(validKeyframes.size() - 1).getTime();
-
-                        volumeExpr.append("'");
-
-                        // Generate conditions for each time range
-                        int conditionCount = 0;
-                        for (int j = 0; j < validKeyframes.size(); j++) {
-                            double startTime, endTime, startValue, endValue;
-
-                            Keyframe currentKf = validKeyframes.get(j);
-                            startTime = currentKf.getTime();
-                            startValue = ((Number) currentKf.getValue()).doubleValue();
-
-                            if (j < validKeyframes.size() - 1) {
-                                Keyframe nextKf = validKeyframes.get(j + 1);
-                                endTime = nextKf.getTime();
-                                endValue = ((Number) nextKf.getValue()).doubleValue();
-                            } else {
-                                endTime = finalTimelineDuration;
-                                endValue = startValue; // Last keyframe value extends to end
-                            }
-
-                            if (startTime < endTime) {
-                                String condition = String.format("between(t,%.6f,%.6f)", startTime, endTime);
-                                String valueExpr;
-                                if (Math.abs(startValue - endValue) < 0.000001) {
-                                    valueExpr = String.format("%.6f", startValue);
-                                } else {
-                                    String progress = String.format("(t-%.6f)/(%.6f-%.6f)", startTime, endTime, startTime);
-                                    valueExpr = String.format("%.6f+(%.6f-%.6f)*min(1,max(0,%s))", startValue, endValue, startValue, progress);
-                                }
-                                volumeExpr.append(String.format("if(%s,%s,", condition, valueExpr));
-                                conditionCount++;
-                            }
-                        }
-
-                        // Default value
-                        volumeExpr.append(String.format("%.6f", lastValue));
-
-                        // Close all if statements
-                        for (int j = 0; j < conditionCount; j++) {
-                            volumeExpr.append(")");
+                    KeyframeTrack validKeyframes = new KeyframeTrack();
+                    for (int j = 0; j < volumeKeyframes.size(); j++) {
+                        double time = volumeKeyframes.timeAt(j);
+                        double value = volumeKeyframes.valueAt(j); // NaN fails the range check
+                        if (time >= 0 && time <= timelineDuration && value >= 0 && value <= 15) {
+                            validKeyframes.add(volumeKeyframes.get(j));
+                        } else {
+                            System.err.println("Invalid keyframe for audio segment " + as.getId() + ": time=" + time + ", value=" + volumeKeyframes.get(j).getValue());
                         }
+                    }
 
-                        volumeExpr.append("'");
-                        volumeExpr.append(":eval=frame");
+                    if (!validKeyframes.isEmpty()) {
+                        // t restarts at 0 after asetpts, so keyframe times are used as they are
+                        String volumeExpr = "volume='" + KeyframeCurve.of(validKeyframes).toExpression(0, defaultVolume) + "':eval=frame";
                         filterComplex.append(",").append(volumeExpr);
                         System.out.println("Volume expression for audio segment " + as.getId() + ": " + volumeExpr);
                     } else {
@@ -3581,6 +3792,99 @@ public class VideoEditingService {
         return outputPath;
     }
 
+        // Bump when generateTextPng changes its output so stale cached rasters are not reused
+        private static final int TEXT_RASTER_VERSION = 1;
+
+        // Everything generateTextPng reads, in a fixed order; the font is the resolved face so installing it re-renders
+        private String textRasterKey(TextSegment ts, int canvasWidth, int canvasHeight) {
+            double defaultScale = ts.getScale() != null ? ts.getScale() : 1.0;
+            double maxScale = Math.max(defaultScale, KeyframeCurve.of(ts.getKeyframes().get("scale")).max(defaultScale));
+
+            StringBuilder style = new StringBuilder();
+            style.append(TEXT_RASTER_VERSION).append('|')
+                    .append(canvasWidth).append('x').append(canvasHeight).append('|')
+                    .append(ts.getText()).append('|')
+                    .append(fontRegistry.getFont(ts.getFontFamily(), 1f).getFontName()).append('|')
+                    .append(maxScale).append('|')
+                    .append(ts.getFontColor()).append('|')
+                    .append(ts.getAlignment()).append('|')
+                    .append(ts.getBackgroundColor()).append('|')
+                    .append(ts.getBackgroundOpacity()).append('|')
+                    .append(ts.getBackgroundW()).append('|')
+                    .append(ts.getBackgroundH()).append('|')
+                    .append(ts.getBackgroundBorderColor()).append('|')
+                    .append(ts.getBackgroundBorderWidth()).append('|')
+                    .append(ts.getBackgroundBorderRadius()).append('|')
+                    .append(ts.getTextBorderColor()).append('|')
+                    .append(ts.getTextBorderWidth()).append('|')
+                    .append(ts.getTextBorderOpacity());
+            return TextRasterCache.key(style.toString());
+        }
+
+        // A looped still is read only for the seconds it is on screen; with eof_action=pass on its overlay
+        // the rest of the timeline neither decodes it nor blends a repeated last frame
+        private void addLoopedImageInput(List<String> command, File file, double duration) {
+            command.add("-loop");
+            command.add("1");
+            command.add("-t");
+            command.add(String.format("%.6f", duration));
+            command.add("-i");
+            command.add(file.getAbsolutePath());
+        }
+
+        // Transition rotation (radians) plus the segment's "rotation" keyframes (degrees, clockwise) in one rotate filter
+        private void appendRotationFilter(StringBuilder filterComplex, String transitionRotation, KeyframeTrack rotationKeyframes,
+                                          double timelineStart, String segmentId) {
+            KeyframeCurve rotationCurve = KeyframeCurve.of(rotationKeyframes);
+            boolean hasTransition = transitionRotation != null && !transitionRotation.equals("0");
+            boolean hasKeyframes = !rotationCurve.isEmpty() && !(rotationCurve.isConstant() && rotationCurve.valueAt(0, 0) == 0);
+            if (!hasTransition && !hasKeyframes) {
+                return;
+            }
+            StringBuilder rotationExpr = new StringBuilder();
+            if (hasTransition) {
+                rotationExpr.append(transitionRotation);
+            }
+            if (hasKeyframes) {
+                if (rotationExpr.length() > 0) {
+                    rotationExpr.append("+");
+                }
+                rotationExpr.append("(").append(rotationCurve.toExpression(timelineStart, 0)).append(")*PI/180");
+            }
+            filterComplex.append("format=rgba,");
+            filterComplex.append("rotate='").append(rotationExpr).append("':ow='hypot(iw,ih)':oh='hypot(iw,ih)':c=none,");
+            System.out.println("Rotation applied to segment " + segmentId + ": " + rotationExpr);
+        }
+
+        // colorchannelmixer scales alpha in rgba without lutrgb's per-pixel expression. It takes no time expressions,
+        // so for keyframed opacity sendcmd evaluates the compiled curve on every frame and sets aa on this instance.
+        private void appendOpacityFilter(StringBuilder filterComplex, Double staticOpacity, KeyframeTrack opacityKeyframes,
+                                         double timelineStart, double timelineEnd, String outputLabel,
+                                         File tempDir, List<File> tempFiles) throws IOException {
+            KeyframeCurve opacityCurve = KeyframeCurve.of(opacityKeyframes);
+            double opacity = staticOpacity != null ? staticOpacity : 1.0;
+            if (opacityCurve.isEmpty() || opacityCurve.isConstant()) {
+                opacity = Math.max(0, Math.min(1, opacityCurve.valueAt(0, opacity)));
+                if (opacity < 1.0) {
+                    filterComplex.append("format=rgba,colorchannelmixer=aa=").append(String.format("%.6f", opacity)).append(",");
+                    System.out.println("Opacity applied to segment " + outputLabel + ": " + opacity);
+                }
+                return;
+            }
+
+            String instance = "colorchannelmixer@opacity_" + outputLabel;
+            File commandFile = new File(tempDir, "opacity_" + outputLabel + "_" + System.nanoTime() + ".cmd");
+            String command = String.format("%.6f-%.6f [expr] %s aa 'max(0,min(1,%s))';%n",
+                    timelineStart, timelineEnd, instance, opacityCurve.toExpression("T", timelineStart, opacity));
+            Files.writeString(commandFile.toPath(), command, StandardCharsets.UTF_8);
+            tempFiles.add(commandFile);
+
+            double initialOpacity = Math.max(0, Math.min(1, opacityCurve.valueAt(0, opacity)));
+            filterComplex.append("sendcmd=f='").append(commandFile.getAbsolutePath()).append("',");
+            filterComplex.append("format=rgba,").append(instance).append("=aa=").append(String.format("%.6f", initialOpacity)).append(",");
+            System.out.println("Keyframed opacity for " + outputLabel + ": " + command.trim());
+        }
+
         private String generateTextPng(TextSegment ts, File tempDir, int canvasWidth, int canvasHeight) throws IOException {
             // Resolution multiplier for high-quality text (1.5 for 4K, 2.0 for 1080p)
             final double RESOLUTION_MULTIPLIER = canvasWidth >= 3840 ? 1.5 : 2.0;
@@ -3589,17 +3893,7 @@ public class VideoEditingService {
 
             // Determine maximum scale from keyframes or default scale
             double defaultScale = ts.getScale() != null ? ts.getScale() : 1.0;
-            List<Keyframe> scaleKeyframes = ts.getKeyframes().getOrDefault("scale", new ArrayList<>());
-            double maxScale = defaultScale;
-            if (!scaleKeyframes.isEmpty()) {
-                maxScale = Math.max(
-                        defaultScale,
-                        scaleKeyframes.stream()
-                                .mapToDouble(kf -> ((Number) kf.getValue()).doubleValue())
-                                .max()
-                                .orElse(defaultScale)
-                );
-            }
+            double maxScale = Math.max(defaultScale, KeyframeCurve.of(ts.getKeyframes().get("scale")).max(defaultScale));
 
             // Parse colors
             Color fontColor = parseColor(ts.getFontColor(), Color.WHITE, "font", ts.getId());
@@ -3610,16 +3904,9 @@ public class VideoEditingService {
             Color textBorderColor = ts.getTextBorderColor() != null && !ts.getTextBorderColor().equals("transparent") ?
                     parseColor(ts.getTextBorderColor(), null, "text border", ts.getId()) : null;
 
-            // Load font with fixed base size of 24, scaled by maxScale and resolution multiplier
+            // Font with fixed base size of 24, scaled by maxScale and resolution multiplier (parsed once at startup)
             double baseFontSize = 24.0 * maxScale * RESOLUTION_MULTIPLIER;
-            Font font;
-            try {
-                font = Font.createFont(Font.TRUETYPE_FONT, new File(getFontPathByFamily(ts.getFontFamily())))
-                        .deriveFont((float) baseFontSize);
-            } catch (Exception e) {
-                System.err.println("Failed to load font for text segment " + ts.getId() + ": " + ts.getFontFamily() + ", using Arial");
-                font = new Font("Arial", Font.PLAIN, (int) baseFontSize);
-            }
+            Font font = fontRegistry.getFont(ts.getFontFamily(), (float) baseFontSize);
 
             // Measure text
             BufferedImage tempImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
@@ -4017,75 +4304,12 @@ public class VideoEditingService {
             }
         }
 
-        /**
-         * Gets the system font path for a given font family name.
-         * @param fontFamily The font family name
-         * @return The full path to the font file
-         */
-        private String getFontPathByFamily(String fontFamily) {
-            // Default font path if nothing else matches
-            String defaultFontPath = "C:/Windows/Fonts/Arial.ttf";
-
-            if (fontFamily == null || fontFamily.trim().isEmpty()) {
-                return defaultFontPath;
-            }
-
-            // Map common font families to their file paths
-            // You can expand this map with more fonts as needed
-            Map<String, String> fontMap = new HashMap<>();
-            fontMap.put("Arial", "C\\:/Windows/Fonts/Arial.ttf");
-            fontMap.put("Times New Roman", "C\\:/Windows/Fonts/times.ttf");
-            fontMap.put("Courier New", "C\\:/Windows/Fonts/cour.ttf");
-            fontMap.put("Calibri", "C\\:/Windows/Fonts/calibri.ttf");
-            fontMap.put("Verdana", "C\\:/Windows/Fonts/verdana.ttf");
-            fontMap.put("Georgia", "C\\:/Windows/Fonts/georgia.ttf");
-            fontMap.put("Comic Sans MS", "C\\:/Windows/Fonts/comic.ttf");
-            fontMap.put("Impact", "C\\:/Windows/Fonts/impact.ttf");
-            fontMap.put("Tahoma", "C\\:/Windows/Fonts/tahoma.ttf");
-
-            // Process the font family name to match potential keys
-            String processedFontFamily = fontFamily.trim();
-
-            // Try direct match
-            if (fontMap.containsKey(processedFontFamily)) {
-                System.out.println("Found exact font match for: " + processedFontFamily);
-                return fontMap.get(processedFontFamily);
-            }
-
-            // Try case-insensitive match
-            for (Map.Entry<String, String> entry : fontMap.entrySet()) {
-                if (entry.getKey().equalsIgnoreCase(processedFontFamily)) {
-                    System.out.println("Found case-insensitive font match for: " + processedFontFamily);
-                    return entry.getValue();
-                }
-            }
-
-            // If the specified font isn't in our map, you might want to try a more elaborate lookup
-            // For example, scanning the Windows fonts directory or using platform-specific APIs
-            // For now, we'll just log this and fallback to Arial
-            System.out.println("Warning: Font family '" + fontFamily + "' not found in font map. Using Arial as fallback.");
-            return defaultFontPath;
-        }
-
         public void applyFilter(String sessionId, String segmentId, String filterName, String filterValue) {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = session.getTimelineState();
 
-            boolean segmentExists = false;
-            for (VideoSegment segment : timelineState.getSegments()) {
-                if (segment.getId().equals(segmentId)) {
-                    segmentExists = true;
-                    break;
-                }
-            }
-            if (!segmentExists) {
-                for (ImageSegment segment : timelineState.getImageSegments()) {
-                    if (segment.getId().equals(segmentId)) {
-                        segmentExists = true;
-                        break;
-                    }
-                }
-            }
+            Object target = timelineState.getSegmentById(segmentId);
+            boolean segmentExists = target instanceof VideoSegment || target instanceof ImageSegment;
             if (!segmentExists) {
                 throw new RuntimeException("Segment not found with ID: " + segmentId);
             }
@@ -4094,22 +4318,26 @@ public class VideoEditingService {
             filter.setSegmentId(segmentId);
             filter.setFilterName(filterName);
             filter.setFilterValue(filterValue);
-            timelineState.getFilters().removeIf(f -> f.getSegmentId().equals(segmentId) && f.getFilterName().equals(filterName));
+            if (timelineState.getFiltersForSegment(segmentId).stream().anyMatch(f -> f.getFilterName().equals(filterName))) {
+                timelineState.getFilters().removeIf(f -> segmentId.equals(f.getSegmentId()) && f.getFilterName().equals(filterName));
+            }
             timelineState.getFilters().add(filter);
+            timelineState.invalidateIndexes();
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         public void removeFilter(String sessionId, String segmentId) {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = session.getTimelineState();
 
-            boolean removed = timelineState.getFilters().removeIf(f -> f.getSegmentId().equals(segmentId));
-            if (!removed) {
+            if (timelineState.getFiltersForSegment(segmentId).isEmpty()) {
                 throw new RuntimeException("Filter not found with ID: " + " for segment: " + segmentId);
             }
+            timelineState.getFilters().removeIf(f -> segmentId.equals(f.getSegmentId()));
+            timelineState.invalidateIndexes();
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         public List<Filter> getFiltersForSegment(String sessionId, String segmentId) {
@@ -4117,19 +4345,14 @@ public class VideoEditingService {
             TimelineState timelineState = session.getTimelineState();
 
             // Check if the segment exists in any of the segment types
-            boolean segmentExists = timelineState.getSegments().stream().anyMatch(s -> s.getId().equals(segmentId)) ||
-                    timelineState.getImageSegments().stream().anyMatch(s -> s.getId().equals(segmentId)) ||
-                    timelineState.getTextSegments().stream().anyMatch(s -> s.getId().equals(segmentId)) ||
-                    timelineState.getAudioSegments().stream().anyMatch(s -> s.getId().equals(segmentId));
+            boolean segmentExists = timelineState.containsSegment(segmentId);
 
             if (!segmentExists) {
                 throw new RuntimeException("Segment not found with ID: " + segmentId);
             }
 
             // Return filters associated with the segment
-            return timelineState.getFilters().stream()
-                    .filter(f -> f.getSegmentId().equals(segmentId))
-                    .collect(Collectors.toList());
+            return new ArrayList<>(timelineState.getFiltersForSegment(segmentId));
         }
 
         public void updateFilter(String sessionId, String segmentId, String filterId, String filterName, String filterValue) {
@@ -4137,28 +4360,15 @@ public class VideoEditingService {
             TimelineState timelineState = session.getTimelineState();
 
             // Verify segment exists
-            boolean segmentExists = false;
-            for (VideoSegment segment : timelineState.getSegments()) {
-                if (segment.getId().equals(segmentId)) {
-                    segmentExists = true;
-                    break;
-                }
-            }
-            if (!segmentExists) {
-                for (ImageSegment segment : timelineState.getImageSegments()) {
-                    if (segment.getId().equals(segmentId)) {
-                        segmentExists = true;
-                        break;
-                    }
-                }
-            }
+            Object target = timelineState.getSegmentById(segmentId);
+            boolean segmentExists = target instanceof VideoSegment || target instanceof ImageSegment;
             if (!segmentExists) {
                 throw new RuntimeException("Segment not found with ID: " + segmentId);
             }
 
             // Find and update the existing filter
-            Optional<Filter> filterToUpdate = timelineState.getFilters().stream()
-                    .filter(f -> f.getSegmentId().equals(segmentId) && f.getFilterId().equals(filterId))
+            Optional<Filter> filterToUpdate = timelineState.getFiltersForSegment(segmentId).stream()
+                    .filter(f -> f.getFilterId().equals(filterId))
                     .findFirst();
 
             if (filterToUpdate.isPresent()) {
@@ -4169,7 +4379,7 @@ public class VideoEditingService {
                 throw new RuntimeException("Filter not found with ID: " + filterId + " for segment: " + segmentId);
             }
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         // Delete Video Segment from Timeline
@@ -4177,14 +4387,18 @@ public class VideoEditingService {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = session.getTimelineState();
 
-            boolean removed = timelineState.getSegments().removeIf(segment -> segment.getId().equals(segmentId));
-            if (!removed) {
+            VideoSegment target = timelineState.getSegmentById(segmentId, VideoSegment.class);
+            if (target == null) {
                 throw new RuntimeException("Video segment not found with ID: " + segmentId);
             }
+            timelineState.getSegments().remove(target);
 
             // Remove associated filters
-            timelineState.getFilters().removeIf(filter -> filter.getSegmentId().equals(segmentId));
-            session.setLastAccessTime(System.currentTimeMillis());
+            if (!timelineState.getFiltersForSegment(segmentId).isEmpty()) {
+                timelineState.getFilters().removeIf(filter -> segmentId.equals(filter.getSegmentId()));
+            }
+            timelineState.invalidateIndexes();
+            session.markModified();
         }
 
         // Delete Image Segment from Timeline
@@ -4192,14 +4406,18 @@ public class VideoEditingService {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = session.getTimelineState();
 
-            boolean removed = timelineState.getImageSegments().removeIf(segment -> segment.getId().equals(imageId));
-            if (!removed) {
+            ImageSegment target = timelineState.getSegmentById(imageId, ImageSegment.class);
+            if (target == null) {
                 throw new RuntimeException("Image segment not found with ID: " + imageId);
             }
+            timelineState.getImageSegments().remove(target);
 
             // Remove associated filters
-            timelineState.getFilters().removeIf(filter -> filter.getSegmentId().equals(imageId));
-            session.setLastAccessTime(System.currentTimeMillis());
+            if (!timelineState.getFiltersForSegment(imageId).isEmpty()) {
+                timelineState.getFilters().removeIf(filter -> imageId.equals(filter.getSegmentId()));
+            }
+            timelineState.invalidateIndexes();
+            session.markModified();
         }
 
         // Delete Audio Segment from Timeline
@@ -4207,12 +4425,14 @@ public class VideoEditingService {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = session.getTimelineState();
 
-            boolean removed = timelineState.getAudioSegments().removeIf(segment -> segment.getId().equals(audioId));
-            if (!removed) {
+            AudioSegment target = timelineState.getSegmentById(audioId, AudioSegment.class);
+            if (target == null) {
                 throw new RuntimeException("Audio segment not found with ID: " + audioId);
             }
+            timelineState.getAudioSegments().remove(target);
+            timelineState.invalidateIndexes();
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
 
         // Delete Text Segment from Timeline
@@ -4220,12 +4440,14 @@ public class VideoEditingService {
             EditSession session = getSession(sessionId);
             TimelineState timelineState = session.getTimelineState();
 
-            boolean removed = timelineState.getTextSegments().removeIf(segment -> segment.getId().equals(textId));
-            if (!removed) {
+            TextSegment target = timelineState.getSegmentById(textId, TextSegment.class);
+            if (target == null) {
                 throw new RuntimeException("Text segment not found with ID: " + textId);
             }
+            timelineState.getTextSegments().remove(target);
+            timelineState.invalidateIndexes();
 
-            session.setLastAccessTime(System.currentTimeMillis());
+            session.markModified();
         }
         // Helper method to convert Element to ElementDto
         private ElementDto toElementDto(Element element) {
@@ -4239,20 +4461,12 @@ public class VideoEditingService {
 
         // Add element to project (store in element_json)
         public void addElement(Project project, String imagePath, String imageFileName) throws JsonProcessingException {
-            List<Map<String, String>> elements = getElements(project);
-            Map<String, String> elementData = new HashMap<>();
-            elementData.put("imagePath", imagePath);
-            elementData.put("imageFileName", imageFileName);
-            elements.add(elementData);
-            project.setElementJson(objectMapper.writeValueAsString(elements));
+            saveAsset(project, ProjectAsset.Type.ELEMENT, imagePath, imageFileName, null, null, null);
         }
 
         // Get elements from project
         public List<Map<String, String>> getElements(Project project) throws JsonProcessingException {
-            if (project.getElementJson() == null || project.getElementJson().isEmpty()) {
-                return new ArrayList<>();
-            }
-            return objectMapper.readValue(project.getElementJson(), new TypeReference<List<Map<String, String>>>() {});
+            return getAssets(project, ProjectAsset.Type.ELEMENT);
         }
 
 }
\ No newline at end of file
@@ -24,6 +24,7 @@ public class VideoService {
 
     private final VideoRepository videoRepository;
     private final BackblazeB2Service backblazeB2Service;
+    private final BatchIngestExecutor batchIngestExecutor;
 
     @Value("${ffprobe.path:/usr/bin/ffprobe}")
     private String ffprobePath;
@@ -31,44 +32,65 @@ public class VideoService {
     @Value("${app.base-dir:/tmp}")
     private String baseDir;
 
-    public VideoService(VideoRepository videoRepository, BackblazeB2Service backblazeB2Service) {
+    public VideoService(VideoRepository videoRepository, BackblazeB2Service backblazeB2Service,
+                        BatchIngestExecutor batchIngestExecutor) {
         this.videoRepository = videoRepository;
         this.backblazeB2Service = backblazeB2Service;
+        this.batchIngestExecutor = batchIngestExecutor;
     }
 
     public List<Video> uploadVideos(MultipartFile[] files, String[] titles, User user) throws IOException, B2Exception {
-        List<Video> uploadedVideos = new ArrayList<>();
-
+        // Files are uploaded in parallel, then all metadata rows are saved together
+        List<BatchIngestExecutor.IngestTask<Video>> tasks = new ArrayList<>();
         for (int i = 0; i < files.length; i++) {
             MultipartFile file = files[i];
             String originalFilename = file.getOriginalFilename();
             String title = (titles != null && i < titles.length && titles[i] != null)
                     ? titles[i]
                     : originalFilename;
+            String tempPath = baseDir + "/temp/" + System.currentTimeMillis() + "_" + i + "_" + originalFilename;
+
+            tasks.add(() -> {
+                // Save to temporary file
+                File tempFile = backblazeB2Service.saveMultipartFileToTemp(file, tempPath);
+
+                // Upload to Backblaze B2
+                String b2Path = "videos/users/" + user.getId() + "/" + originalFilename;
+                try {
+                    backblazeB2Service.uploadFile(tempFile, b2Path);
+                } finally {
+                    Files.deleteIfExists(tempFile.toPath());
+                }
+
+                Video video = new Video();
+                video.setTitle(title);
+                video.setFilePath(b2Path); // Store B2 path
+                video.setUser(user);
+                return video;
+            });
+        }
 
-            // Save to temporary file
-            String tempPath = baseDir + "/temp/" + System.currentTimeMillis() + "_" + originalFilename;
-            File tempFile = backblazeB2Service.saveMultipartFileToTemp(file, tempPath);
-
-            // Upload to Backblaze B2
-            String b2Path = "videos/users/" + user.getId() + "/" + originalFilename;
-            backblazeB2Service.uploadFile(tempFile, b2Path);
-
-            // Clean up temporary file
-            Files.deleteIfExists(tempFile.toPath());
-
-            // Save video metadata
-            Video video = new Video();
-            video.setTitle(title);
-            video.setFilePath(b2Path); // Store B2 path
-            video.setUser(user);
-            uploadedVideos.add(videoRepository.save(video));
+        List<Video> uploadedVideos;
+        try {
+            uploadedVideos = videoRepository.saveAll(batchIngestExecutor.runAll(tasks));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Video upload interrupted", e);
         }
 
         logger.info("Uploaded {} videos for user {}", uploadedVideos.size(), user.getEmail());
         return uploadedVideos;
     }
 
+    // Records a video whose bytes were uploaded straight into B2 (chunked upload)
+    public Video registerUploadedVideo(User user, String title, String b2Path) {
+        Video video = new Video();
+        video.setTitle(title);
+        video.setFilePath(b2Path);
+        video.setUser(user);
+        return videoRepository.save(video);
+    }
+
     public List<Video> getVideosByUser(String email) {
         return videoRepository.findByUserEmail(email);
     }
@@ -0,0 +1,163 @@
+package com.example.videoeditor.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Min/max peak pyramid for one audio file. Level 0 is the finest; every next level merges FACTOR buckets.
+//
+// Binary layout (.wfp, little-endian):
+//   "WFPY" | version u8 | levelCount u8 | reserved u16 | sampleRate i32
+//   levelCount x (peaksPerSecond i32 | bucketCount i32)
+//   for each level: bucketCount x (min i16 | max i16)
+public final class WaveformPyramid {
+    public static final int[] PEAKS_PER_SECOND = {1000, 100, 10};
+    private static final int FACTOR = 10;
+
+    private static final byte[] MAGIC = {'W', 'F', 'P', 'Y'};
+    private static final byte VERSION_1 = 1;
+
+    private final int sampleRate;
+    private final short[][] min;
+    private final short[][] max;
+
+    private WaveformPyramid(int sampleRate, short[][] min, short[][] max) {
+        this.sampleRate = sampleRate;
+        this.min = min;
+        this.max = max;
+    }
+
+    // Builds the coarser levels from the finest one (PEAKS_PER_SECOND[0] buckets per second)
+    public static WaveformPyramid fromBaseLevel(int sampleRate, short[] baseMin, short[] baseMax, int count) {
+        short[][] min = new short[PEAKS_PER_SECOND.length][];
+        short[][] max = new short[PEAKS_PER_SECOND.length][];
+        min[0] = Arrays.copyOf(baseMin, count);
+        max[0] = Arrays.copyOf(baseMax, count);
+        for (int level = 1; level < PEAKS_PER_SECOND.length; level++) {
+            short[] finerMin = min[level - 1];
+            short[] finerMax = max[level - 1];
+            int size = (finerMin.length + FACTOR - 1) / FACTOR;
+            min[level] = new short[size];
+            max[level] = new short[size];
+            for (int i = 0; i < size; i++) {
+                short lo = Short.MAX_VALUE;
+                short hi = Short.MIN_VALUE;
+                int end = Math.min(finerMin.length, (i + 1) * FACTOR);
+                for (int j = i * FACTOR; j < end; j++) {
+                    if (finerMin[j] < lo) lo = finerMin[j];
+                    if (finerMax[j] > hi) hi = finerMax[j];
+                }
+                min[level][i] = lo;
+                max[level][i] = hi;
+            }
+        }
+        return new WaveformPyramid(sampleRate, min, max);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int levelCount() {
+        return min.length;
+    }
+
+    public int bucketCount(int level) {
+        return min[level].length;
+    }
+
+    // Coarsest level that still has at least the requested resolution, or the finest level
+    public int levelFor(int peaksPerSecond) {
+        for (int level = PEAKS_PER_SECOND.length - 1; level >= 0; level--) {
+            if (PEAKS_PER_SECOND[level] >= peaksPerSecond) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    public short[] getMin(int level) {
+        return min[level];
+    }
+
+    public short[] getMax(int level) {
+        return max[level];
+    }
+
+    // Max absolute amplitude in 0..1 at the given level, the shape the JSON waveform always used
+    public float[] toAbsolutePeaks(int level) {
+        float[] peaks = new float[min[level].length];
+        for (int i = 0; i < peaks.length; i++) {
+            int peak = Math.max(Math.abs((int) min[level][i]), Math.abs((int) max[level][i]));
+            peaks[i] = Math.min(peak / 32768.0f, 1.0f);
+        }
+        return peaks;
+    }
+
+    public byte[] encode() {
+        int size = MAGIC.length + 4 + 4 + levelCount() * 8;
+        for (short[] level : min) {
+            size += level.length * 4;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.put(VERSION_1);
+        buffer.put((byte) levelCount());
+        buffer.putShort((short) 0);
+        buffer.putInt(sampleRate);
+        for (int level = 0; level < levelCount(); level++) {
+            buffer.putInt(PEAKS_PER_SECOND[level]);
+            buffer.putInt(min[level].length);
+        }
+        for (int level = 0; level < levelCount(); level++) {
+            for (int i = 0; i < min[level].length; i++) {
+                buffer.putShort(min[level][i]);
+                buffer.putShort(max[level][i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static WaveformPyramid decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new RuntimeException("Not a waveform pyramid file");
+        }
+        byte version = buffer.get();
+        if (version != VERSION_1) {
+            throw new RuntimeException("Unsupported waveform pyramid version: " + version);
+        }
+        int levels = buffer.get();
+        buffer.getShort();
+        int sampleRate = buffer.getInt();
+        int[] counts = new int[levels];
+        for (int level = 0; level < levels; level++) {
+            int peaksPerSecond = buffer.getInt();
+            if (level >= PEAKS_PER_SECOND.length || peaksPerSecond != PEAKS_PER_SECOND[level]) {
+                throw new RuntimeException("Unexpected waveform pyramid level: " + peaksPerSecond + " peaks/s");
+            }
+            counts[level] = buffer.getInt();
+        }
+        short[][] min = new short[levels][];
+        short[][] max = new short[levels][];
+        for (int level = 0; level < levels; level++) {
+            min[level] = new short[counts[level]];
+            max[level] = new short[counts[level]];
+            for (int i = 0; i < counts[level]; i++) {
+                min[level][i] = buffer.getShort();
+                max[level][i] = buffer.getShort();
+            }
+        }
+        return new WaveformPyramid(sampleRate, min, max);
+    }
+
+    public long sizeInBytes() {
+        long size = 0;
+        for (short[] level : min) {
+            size += level.length * 4L;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.videoeditor.service;
+
+import com.backblaze.b2.client.exceptions.B2Exception;
+import com.backblaze.b2.client.exceptions.B2NotFoundException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class WaveformService {
+    private static final Logger logger = LoggerFactory.getLogger(WaveformService.class);
+
+    static final int PCM_SAMPLE_RATE = 44100;
+    static final int PEAKS_PER_SECOND = 100;
+    static final String PYRAMID_EXTENSION = ".wfp";
+    static final String BINARY_EXTENSION = ".wfb";
+    public static final String TILE_CONTENT_TYPE = "application/vnd.videoeditor.waveform-tile";
+    public static final String BINARY_CONTENT_TYPE = "application/vnd.videoeditor.waveform";
+    // Upper bound on buckets per tile so a single request can't ask for a whole hour at 1000 peaks/s
+    static final int MAX_TILE_BUCKETS = 20000;
+
+    private static final byte[] TILE_MAGIC = {'W', 'F', 'T', 'L'};
+    private static final byte[] BINARY_MAGIC = {'W', 'F', 'B', 'N'};
+    private static final long PYRAMID_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final BackblazeB2Service backblazeB2Service;
+    private final ObjectMapper objectMapper;
+
+    // Decoded pyramids by B2 path, evicted least-recently-used once the total passes PYRAMID_CACHE_BYTES
+    private final LinkedHashMap<String, WaveformPyramid> pyramidCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long pyramidCacheBytes;
+
+    @Value("${ffmpeg.path:/usr/local/bin/ffmpeg}")
+    private String ffmpegPath;
+    @Value("${app.base-dir:/tmp}")
+    private String baseDir;
+
+    public WaveformService(BackblazeB2Service backblazeB2Service, ObjectMapper objectMapper) {
+        this.backblazeB2Service = backblazeB2Service;
+        this.objectMapper = objectMapper;
+    }
+
+    // Single ffmpeg pass: encodes the first audio stream of source to MP3 at audioOut and, from the same
+    // decode, streams mono PCM to stdout so peaks are computed without a second download or decode
+    public WaveformPyramid encodeMp3WithPeaks(File source, File audioOut) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegPath);
+        command.add("-i");
+        command.add(source.getAbsolutePath());
+        command.add("-y");
+        // Output 1: encoded audio
+        command.add("-map");
+        command.add("0:a:0");
+        command.add("-vn");
+        command.add("-acodec");
+        command.add("mp3");
+        command.add(audioOut.getAbsolutePath());
+        // Output 2: raw PCM for the waveform
+        command.add("-map");
+        command.add("0:a:0");
+        command.add("-f");
+        command.add("s16le");
+        command.add("-ac");
+        command.add("1");
+        command.add("-ar");
+        command.add(String.valueOf(PCM_SAMPLE_RATE));
+        command.add("pipe:1");
+
+        return runPeakPipeline(command);
+    }
+
+    // Decode-only variant for audio that is already encoded (uploaded audio files)
+    public WaveformPyramid decodePeaks(File audio) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ffmpegPath);
+        command.add("-i");
+        command.add(audio.getAbsolutePath());
+        command.add("-vn");
+        command.add("-f");
+        command.add("s16le");
+        command.add("-ac");
+        command.add("1");
+        command.add("-ar");
+        command.add(String.valueOf(PCM_SAMPLE_RATE));
+        command.add("pipe:1");
+
+        return runPeakPipeline(command);
+    }
+
+    private WaveformPyramid runPeakPipeline(List<String> command) throws IOException, InterruptedException {
+        File logFile = File.createTempFile("ffmpeg_waveform_", ".log", tempDir());
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        // stderr goes to a file so it can never fill up and block the PCM pipe
+        processBuilder.redirectError(logFile);
+        Process process = processBuilder.start();
+        try {
+            WaveformPyramid peaks;
+            try (ReadableByteChannel pcm = Channels.newChannel(process.getInputStream())) {
+                peaks = readPeaks(pcm);
+            }
+
+            boolean completed = process.waitFor(5, TimeUnit.MINUTES);
+            if (!completed) {
+                process.destroyForcibly();
+                throw new RuntimeException("FFmpeg process timed out after 5 minutes");
+            }
+            if (process.exitValue() != 0) {
+                logger.error("FFmpeg waveform pipeline failed: {}", readTail(logFile));
+                throw new RuntimeException("FFmpeg process failed with exit code: " + process.exitValue());
+            }
+            return peaks;
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+            Files.deleteIfExists(logFile.toPath());
+        }
+    }
+
+    // Signed min/max per finest pyramid bucket, streamed straight off the pipe into primitive arrays;
+    // nothing is written to disk and no per-sample objects are created
+    private WaveformPyramid readPeaks(ReadableByteChannel pcm) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        int bucketsPerSecond = WaveformPyramid.PEAKS_PER_SECOND[0];
+        short[] mins = new short[16384];
+        short[] maxs = new short[16384];
+        int bucketCount = 0;
+        int currentBucket = 0;
+        long sampleIndex = 0;
+        short lo = Short.MAX_VALUE;
+        short hi = Short.MIN_VALUE;
+
+        while (pcm.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.remaining() >= 2) {
+                short sample = buffer.getShort();
+                // Buckets are fractional in samples (44.1 at 1000/s) but every 10 of them land on a 441-sample edge
+                int bucket = (int) (sampleIndex++ * bucketsPerSecond / PCM_SAMPLE_RATE);
+                if (bucket != currentBucket) {
+                    if (bucketCount == mins.length) {
+                        mins = Arrays.copyOf(mins, mins.length * 2);
+                        maxs = Arrays.copyOf(maxs, maxs.length * 2);
+                    }
+                    mins[bucketCount] = lo;
+                    maxs[bucketCount] = hi;
+                    bucketCount++;
+                    currentBucket = bucket;
+                    lo = Short.MAX_VALUE;
+                    hi = Short.MIN_VALUE;
+                }
+                if (sample < lo) lo = sample;
+                if (sample > hi) hi = sample;
+            }
+            // Keep a dangling odd byte for the next read
+            buffer.compact();
+        }
+        if (sampleIndex > 0) {
+            if (bucketCount == mins.length) {
+                mins = Arrays.copyOf(mins, bucketCount + 1);
+                maxs = Arrays.copyOf(maxs, bucketCount + 1);
+            }
+            mins[bucketCount] = lo;
+            maxs[bucketCount] = hi;
+            bucketCount++;
+        }
+        return WaveformPyramid.fromBaseLevel(PCM_SAMPLE_RATE, mins, maxs, bucketCount);
+    }
+
+    // Uploads {"sampleRate":100,"peaks":[...]} plus, under the same base name, the 8-bit binary waveform
+    // (.wfb) and the min/max pyramid (.wfp). Returns the JSON path, which is what projects store as
+    // waveformJsonPath; the binary forms are found from it.
+    public String uploadWaveform(WaveformPyramid pyramid, String audioFileName, Long projectId) throws IOException, B2Exception {
+        int level = pyramid.levelFor(PEAKS_PER_SECOND);
+        Map<String, Object> waveformData = new HashMap<>();
+        waveformData.put("sampleRate", PEAKS_PER_SECOND);
+        waveformData.put("peaks", pyramid.toAbsolutePeaks(level));
+
+        String baseName = "waveform_" + audioFileName.replaceAll("[^a-zA-Z0-9.]", "_");
+        String b2Dir = "audio/projects/" + projectId + "/waveforms/";
+        long stamp = System.currentTimeMillis();
+        File waveformFile = new File(tempDir(), baseName + ".json_" + stamp);
+        File binaryFile = new File(tempDir(), baseName + BINARY_EXTENSION + "_" + stamp);
+        File pyramidFile = new File(tempDir(), baseName + PYRAMID_EXTENSION + "_" + stamp);
+        try {
+            objectMapper.writeValue(waveformFile, waveformData);
+            Files.write(binaryFile.toPath(), encodeBinary(pyramid, level, 8));
+            Files.write(pyramidFile.toPath(), pyramid.encode());
+            backblazeB2Service.uploadFile(pyramidFile, b2Dir + baseName + PYRAMID_EXTENSION);
+            backblazeB2Service.uploadFile(binaryFile, b2Dir + baseName + BINARY_EXTENSION);
+            // JSON last: its presence means the whole set was written
+            backblazeB2Service.uploadFile(waveformFile, b2Dir + baseName + ".json");
+            return b2Dir + baseName + ".json";
+        } finally {
+            Files.deleteIfExists(waveformFile.toPath());
+            Files.deleteIfExists(binaryFile.toPath());
+            Files.deleteIfExists(pyramidFile.toPath());
+        }
+    }
+
+    // Whole-file binary waveform at one level:
+    //   "WFBN" | version u8 | bits u8 (8 or 16) | reserved u16 | peaksPerSecond i32 | count i32
+    //   count x (min | max) as int8 or little-endian int16
+    public byte[] encodeBinary(WaveformPyramid pyramid, int level, int bits) {
+        int count = pyramid.bucketCount(level);
+        ByteBuffer buffer = ByteBuffer.allocate(BINARY_MAGIC.length + 4 + 8 + count * pairSize(bits))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(BINARY_MAGIC);
+        buffer.put((byte) 1);
+        buffer.put((byte) bits);
+        buffer.putShort((short) 0);
+        buffer.putInt(WaveformPyramid.PEAKS_PER_SECOND[level]);
+        buffer.putInt(count);
+        writePairs(buffer, pyramid.getMin(level), pyramid.getMax(level), 0, count, bits);
+        return buffer.array();
+    }
+
+    // B2 location of the binary waveform that belongs to a waveform JSON file name
+    public String binaryPath(Long projectId, String waveformFileName) {
+        return "audio/projects/" + projectId + "/waveforms/" + stripJson(waveformFileName) + BINARY_EXTENSION;
+    }
+
+    // Stored binary waveform for a waveform JSON file name, or null when none was generated.
+    // Downloaded through a temp file that is always removed, since the controller serves it per request.
+    public byte[] readBinary(Long projectId, String waveformFileName) throws IOException, B2Exception {
+        File tempFile = new File(tempDir(), "waveform_bin_" + System.nanoTime() + BINARY_EXTENSION);
+        try {
+            File downloaded = backblazeB2Service.downloadFile(binaryPath(projectId, waveformFileName), tempFile.getAbsolutePath());
+            return downloaded.exists() ? Files.readAllBytes(downloaded.toPath()) : null;
+        } catch (B2NotFoundException e) {
+            return null;
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    // File name the binary body is served under ("x.json" -> "x.wfb")
+    public String binaryFileName(String waveformFileName) {
+        return stripJson(waveformFileName) + BINARY_EXTENSION;
+    }
+
+    private static int pairSize(int bits) {
+        return bits == 8 ? 2 : 4;
+    }
+
+    // 8-bit keeps the top byte of each 16-bit value, plenty for drawing a waveform
+    private static void writePairs(ByteBuffer buffer, short[] min, short[] max, int start, int end, int bits) {
+        for (int i = start; i < end; i++) {
+            if (bits == 8) {
+                buffer.put((byte) (min[i] >> 8));
+                buffer.put((byte) (max[i] >> 8));
+            } else {
+                buffer.putShort(min[i]);
+                buffer.putShort(max[i]);
+            }
+        }
+    }
+
+    private static String stripJson(String waveformFileName) {
+        return waveformFileName.endsWith(".json")
+                ? waveformFileName.substring(0, waveformFileName.length() - ".json".length())
+                : waveformFileName;
+    }
+
+    // B2 location of the pyramid that belongs to a waveform JSON file name (or to the bare base name)
+    public String pyramidPath(Long projectId, String waveformFileName) {
+        return "audio/projects/" + projectId + "/waveforms/" + stripJson(waveformFileName) + PYRAMID_EXTENSION;
+    }
+
+    // Binary tile for [startSeconds, endSeconds) at the pyramid level closest to peaksPerSecond:
+    //   "WFTL" | version u8 | bits u8 (8 or 16) | reserved u16 | peaksPerSecond i32 | startIndex i32 | count i32
+    //   count x (min | max) as int8 or little-endian int16
+    public byte[] getTile(String pyramidB2Path, int peaksPerSecond, double startSeconds, double endSeconds, int bits)
+            throws IOException, B2Exception {
+        WaveformPyramid pyramid = loadPyramid(pyramidB2Path);
+        int level = pyramid.levelFor(peaksPerSecond);
+        int levelRate = WaveformPyramid.PEAKS_PER_SECOND[level];
+        int total = pyramid.bucketCount(level);
+
+        int start = (int) Math.max(0, Math.min(total, Math.floor(startSeconds * levelRate)));
+        int end = (int) Math.max(start, Math.min(total, Math.ceil(endSeconds * levelRate)));
+        end = Math.min(end, start + MAX_TILE_BUCKETS);
+        int count = end - start;
+
+        ByteBuffer tile = ByteBuffer.allocate(TILE_MAGIC.length + 4 + 12 + count * pairSize(bits))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        tile.put(TILE_MAGIC);
+        tile.put((byte) 1);
+        tile.put((byte) bits);
+        tile.putShort((short) 0);
+        tile.putInt(levelRate);
+        tile.putInt(start);
+        tile.putInt(count);
+        writePairs(tile, pyramid.getMin(level), pyramid.getMax(level), start, end, bits);
+        return tile.array();
+    }
+
+    private WaveformPyramid loadPyramid(String b2Path) throws IOException, B2Exception {
+        synchronized (pyramidCache) {
+            WaveformPyramid cached = pyramidCache.get(b2Path);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        File tempFile = new File(tempDir(), "pyramid_" + System.nanoTime() + PYRAMID_EXTENSION);
+        WaveformPyramid pyramid;
+        try {
+            File downloaded = backblazeB2Service.downloadFile(b2Path, tempFile.getAbsolutePath());
+            if (!downloaded.exists()) {
+                throw new FileNotFoundException("Waveform pyramid not found: " + b2Path);
+            }
+            pyramid = WaveformPyramid.decode(Files.readAllBytes(downloaded.toPath()));
+        } catch (B2NotFoundException e) {
+            throw new FileNotFoundException("Waveform pyramid not found: " + b2Path);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+
+        synchronized (pyramidCache) {
+            if (pyramidCache.put(b2Path, pyramid) == null) {
+                pyramidCacheBytes += pyramid.sizeInBytes();
+            }
+            Iterator<Map.Entry<String, WaveformPyramid>> it = pyramidCache.entrySet().iterator();
+            while (pyramidCacheBytes > PYRAMID_CACHE_BYTES && pyramidCache.size() > 1 && it.hasNext()) {
+                Map.Entry<String, WaveformPyramid> eldest = it.next();
+                pyramidCacheBytes -= eldest.getValue().sizeInBytes();
+                it.remove();
+            }
+        }
+        return pyramid;
+    }
+
+    private File tempDir() {
+        File tempDir = new File(baseDir, "temp");
+        if (!tempDir.exists()) {
+            tempDir.mkdirs();
+        }
+        return tempDir;
+    }
+
+    private String readTail(File logFile) {
+        try {
+            String log = Files.readString(logFile.toPath());
+            return log.length() > 2000 ? log.substring(log.length() - 2000) : log;
+        } catch (IOException e) {
+            return "<no ffmpeg log>";
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.videoeditor;
+
+import com.example.videoeditor.dto.Keyframe;
+import com.example.videoeditor.dto.KeyframeTrack;
+import com.example.videoeditor.service.KeyframeCurve;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The export renders the ffmpeg expression while the editor previews valueAt, so the two are checked against
+// each other by evaluating the expression with a small interpreter for the functions it uses
+public class KeyframeCurveTests {
+
+	// Keyframe times and values are written with 6 decimals
+	private static final double ROUNDING = 1e-4;
+
+	private static void assertExpressionMatches(KeyframeCurve curve, double offset, double from, double to, double tolerance) {
+		String expression = curve.toExpression(offset, -1);
+		for (double time = from; time <= to; time += 0.01) {
+			double expected = curve.valueAt(time - offset, -1);
+			double actual = new FfmpegExpression(expression, "t", time).evaluate();
+			assertEquals(expected, actual, tolerance, "at t=" + time + " in " + expression);
+		}
+	}
+
+	@Test
+	void holdSpanKeepsItsStartValue() {
+		KeyframeCurve curve = KeyframeCurve.of(List.of(
+				new Keyframe(0, 10, "hold"),
+				new Keyframe(2, 20, "linear"),
+				new Keyframe(3, 30, "linear")));
+
+		assertEquals(10, curve.valueAt(0.5, 0));
+		assertEquals(10, curve.valueAt(1.999, 0));
+		assertEquals(20, curve.valueAt(2, 0));
+		assertEquals(25, curve.valueAt(2.5, 0), ROUNDING);
+		assertExpressionMatches(curve, 5, 4, 9, ROUNDING);
+	}
+
+	@Test
+	void easedSpansMatchTheirFormulas() {
+		KeyframeCurve curve = KeyframeCurve.of(List.of(
+				new Keyframe(0, 0, "ease-in"),
+				new Keyframe(1, 10, "ease-out"),
+				new Keyframe(2, 0, "easeInOut"),
+				new Keyframe(3, 8, "linear")));
+
+		assertEquals(2.5, curve.valueAt(0.5, 0), ROUNDING); // 10 * 0.5^2
+		assertEquals(2.5, curve.valueAt(1.5, 0), ROUNDING); // 10 - 10 * (1 - 0.5^2)
+		assertEquals(4, curve.valueAt(2.5, 0), ROUNDING); // smoothstep is symmetric
+		assertEquals(8 * 0.25 * 0.25 * 2.5, curve.valueAt(2.25, 0), ROUNDING);
+		assertExpressionMatches(curve, 1.5, 1, 5, ROUNDING);
+	}
+
+	@Test
+	void bezierSpanIsExactAtPieceBoundariesAndCloseBetween() {
+		KeyframeCurve curve = KeyframeCurve.of(List.of(
+				new Keyframe(0, 0, "bezier(0.42,0,0.58,1)"),
+				new Keyframe(1.6, 100, "linear")));
+		String expression = curve.toExpression(0, 0);
+
+		assertEquals(50, curve.valueAt(0.8, 0), 0.01); // symmetric control points
+		assertTrue(curve.valueAt(0.2, 0) < 100 * 0.2 / 1.6, "starts slower than linear");
+		for (int k = 0; k <= 16; k++) {
+			double time = 1.6 * k / 16;
+			assertEquals(curve.valueAt(time, 0), new FfmpegExpression(expression, "t", time).evaluate(), 1e-3);
+		}
+		// Between boundaries the expression is a linear piece of the curve
+		assertExpressionMatches(curve, 0, -0.5, 2, 0.5);
+	}
+
+	@Test
+	void holdsBeforeFirstAndAfterLastKeyframe() {
+		KeyframeCurve curve = KeyframeCurve.of(List.of(new Keyframe(1, 0.2, "linear"), new Keyframe(2, 0.8, "ease-in")));
+		String expression = curve.toExpression(10, 1);
+
+		assertEquals(0.2, new FfmpegExpression(expression, "t", 0).evaluate(), ROUNDING);
+		assertEquals(0.8, new FfmpegExpression(expression, "t", 20).evaluate(), ROUNDING);
+		assertEquals("1.000000", KeyframeCurve.of(List.of()).toExpression(0, 1));
+		assertEquals("0.200000", KeyframeCurve.of(List.of(new Keyframe(1, 0.2, "linear"))).toExpression(0, 1));
+	}
+
+	@Test
+	void otherTimeVariableGivesTheSameCurve() {
+		KeyframeCurve curve = KeyframeCurve.of(List.of(new Keyframe(0, 1, "ease-out"), new Keyframe(2, 0, "linear")));
+		String expression = curve.toExpression("T", 3, 1);
+
+		for (double time = 2; time <= 6; time += 0.1) {
+			assertEquals(curve.valueAt(time - 3, 1), new FfmpegExpression(expression, "T", time).evaluate(), ROUNDING);
+		}
+	}
+
+	@Test
+	void trackAndListBuildTheSameCurve() {
+		List<Keyframe> unsorted = List.of(
+				new Keyframe(2, 4, "linear"),
+				new Keyframe(0, 1, "ease-in"),
+				new Keyframe(1, "not a number", "linear"),
+				new Keyframe(2, 6, "hold"));
+		KeyframeCurve fromList = KeyframeCurve.of(unsorted);
+		KeyframeCurve fromTrack = KeyframeCurve.of(new KeyframeTrack(unsorted));
+
+		assertEquals(2, fromTrack.size());
+		assertEquals(fromList.toExpression(0, 0), fromTrack.toExpression(0, 0));
+		assertEquals(6, fromTrack.max(0));
+	}
+
+	// Just enough of ffmpeg's expression evaluator for compiled curves: numbers, one time variable, + - * /,
+	// parentheses and if/lt/st/ld/min/max. if() only evaluates the branch it takes, as ffmpeg does.
+	private static final class FfmpegExpression {
+		private final String source;
+		private final String variable;
+		private final double time;
+		private final double[] registers = new double[10];
+		private int position;
+
+		FfmpegExpression(String source, String variable, double time) {
+			this.source = source;
+			this.variable = variable;
+			this.time = time;
+		}
+
+		double evaluate() {
+			position = 0;
+			double value = sum(true);
+			if (position != source.length()) {
+				throw new IllegalStateException("Unexpected '" + source.charAt(position) + "' at " + position);
+			}
+			return value;
+		}
+
+		private double sum(boolean live) {
+			double value = product(live);
+			while (position < source.length() && (peek() == '+' || peek() == '-')) {
+				char operator = source.charAt(position++);
+				double right = product(live);
+				value = operator == '+' ? value + right : value - right;
+			}
+			return value;
+		}
+
+		private double product(boolean live) {
+			double value = unary(live);
+			while (position < source.length() && (peek() == '*' || peek() == '/')) {
+				char operator = source.charAt(position++);
+				double right = unary(live);
+				value = operator == '*' ? value * right : value / right;
+			}
+			return value;
+		}
+
+		private double unary(boolean live) {
+			if (peek() == '-') {
+				position++;
+				return -unary(live);
+			}
+			if (peek() == '+') {
+				position++;
+				return unary(live);
+			}
+			return primary(live);
+		}
+
+		private double primary(boolean live) {
+			if (peek() == '(') {
+				position++;
+				double value = sum(live);
+				expect(')');
+				return value;
+			}
+			if (Character.isDigit(peek()) || peek() == '.') {
+				int start = position;
+				while (position < source.length() && (Character.isDigit(peek()) || peek() == '.')) {
+					position++;
+				}
+				return Double.parseDouble(source.substring(start, position));
+			}
+			int start = position;
+			while (position < source.length() && Character.isLetter(peek())) {
+				position++;
+			}
+			String name = source.substring(start, position);
+			if (name.equals(variable)) {
+				return time;
+			}
+			expect('(');
+			double result;
+			switch (name) {
+				case "if": {
+					double condition = sum(live);
+					expect(',');
+					double whenTrue = sum(live && condition != 0);
+					expect(',');
+					double whenFalse = sum(live && condition == 0);
+					result = condition != 0 ? whenTrue : whenFalse;
+					break;
+				}
+				case "st": {
+					int register = (int) sum(live);
+					expect(',');
+					result = sum(live);
+					if (live) {
+						registers[register] = result;
+					}
+					break;
+				}
+				case "ld":
+					result = registers[(int) sum(live)];
+					break;
+				case "lt":
+				case "min":
+				case "max": {
+					double left = sum(live);
+					expect(',');
+					double right = sum(live);
+					result = name.equals("lt") ? (left < right ? 1 : 0) : name.equals("min") ? Math.min(left, right) : Math.max(left, right);
+					break;
+				}
+				default:
+					throw new IllegalStateException("Unknown function '" + name + "' at " + start);
+			}
+			expect(')');
+			return result;
+		}
+
+		private char peek() {
+			return position < source.length() ? source.charAt(position) : '\0';
+		}
+
+		private void expect(char expected) {
+			if (peek() != expected) {
+				throw new IllegalStateException("Expected '" + expected + "' at " + position + " in " + source);
+			}
+			position++;
+		}
+	}
+}
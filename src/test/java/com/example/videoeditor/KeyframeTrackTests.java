@@ -0,0 +1,89 @@
+package com.example.videoeditor;
+
+import com.example.videoeditor.dto.Keyframe;
+import com.example.videoeditor.dto.KeyframeTrack;
+import com.example.videoeditor.dto.VideoSegment;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Stored timelines were written when keyframes were plain lists, so they may be unsorted, repeat a time
+// and carry integer values; the track must load them into its sorted shape and write them back as JSON arrays
+public class KeyframeTrackTests {
+
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	private static final String LEGACY_SEGMENT = "{\"id\":\"video-1\",\"sourceVideoPath\":\"videos/a.mp4\","
+			+ "\"timelineStartTime\":0.0,\"timelineEndTime\":4.0,\"keyframes\":{"
+			+ "\"scale\":["
+			+ "{\"time\":2.0,\"value\":2,\"interpolationType\":\"linear\"},"
+			+ "{\"time\":0.0,\"value\":1,\"interpolationType\":\"ease-in\"},"
+			+ "{\"time\":2.0,\"value\":3,\"interpolationType\":\"hold\"},"
+			+ "{\"time\":1.00001,\"value\":1.5,\"interpolationType\":\"linear\"},"
+			+ "{\"time\":1.0,\"value\":1.25,\"interpolationType\":\"linear\"}],"
+			+ "\"positionX\":[{\"time\":3,\"value\":-40},{\"time\":0.5,\"value\":120}]}}";
+
+	@Test
+	void legacyJsonLoadsSortedAndDeduplicated() throws Exception {
+		VideoSegment segment = objectMapper.readValue(LEGACY_SEGMENT, VideoSegment.class);
+
+		KeyframeTrack scale = assertInstanceOf(KeyframeTrack.class, segment.getKeyframes().get("scale"));
+		assertEquals(3, scale.size());
+		assertEquals(0.0, scale.timeAt(0));
+		assertEquals(1.0, scale.timeAt(1));
+		assertEquals(2.0, scale.timeAt(2));
+		// Within the time tolerance the later keyframe in the stored list replaces the earlier one
+		assertEquals(1.25, scale.valueAt(1));
+		assertEquals(3.0, scale.valueAt(2));
+		assertEquals("hold", scale.get(2).getInterpolationType());
+		assertEquals(Integer.valueOf(3), scale.get(2).getValue());
+
+		KeyframeTrack positionX = segment.getKeyframes().get("positionX");
+		assertEquals(0.5, positionX.timeAt(0));
+		assertEquals(120.0, positionX.valueAt(0));
+		assertEquals(-40.0, positionX.valueAt(1));
+		assertEquals("linear", positionX.get(1).getInterpolationType());
+	}
+
+	@Test
+	void writesBackAsSortedArrayKeepingIntegerValues() throws Exception {
+		VideoSegment segment = objectMapper.readValue(LEGACY_SEGMENT, VideoSegment.class);
+
+		String json = objectMapper.writeValueAsString(segment);
+
+		assertEquals(objectMapper.readTree("[{\"time\":0.0,\"value\":1,\"interpolationType\":\"ease-in\"},"
+						+ "{\"time\":1.0,\"value\":1.25,\"interpolationType\":\"linear\"},"
+						+ "{\"time\":2.0,\"value\":3,\"interpolationType\":\"hold\"}]"),
+				objectMapper.readTree(json).get("keyframes").get("scale"));
+
+		VideoSegment reloaded = objectMapper.readValue(json, VideoSegment.class);
+		assertEquals(objectMapper.writeValueAsString(segment), objectMapper.writeValueAsString(reloaded));
+	}
+
+	@Test
+	void editsKeepTimeOrder() {
+		KeyframeTrack track = new KeyframeTrack(List.of(new Keyframe(1, 10, "linear"), new Keyframe(3, 30, "linear")));
+
+		track.add(new Keyframe(2, 20, "linear"));
+		track.set(0, new Keyframe(4, 40, "linear"));
+		assertEquals(List.of(2.0, 3.0, 4.0), track.stream().map(Keyframe::getTime).toList());
+
+		assertTrue(track.replace(new Keyframe(3.00001, 35, "ease-out")));
+		assertEquals(35.0, track.valueAt(1));
+		assertFalse(track.replace(new Keyframe(5, 50, "linear")));
+
+		assertTrue(track.removeAtTime(2));
+		assertEquals(-1, track.indexOfTime(2));
+		assertEquals(1, track.indexOfTime(4.00002));
+
+		track.add(new Keyframe(0, "not a number", "linear"));
+		assertTrue(Double.isNaN(track.valueAt(0)));
+	}
+}
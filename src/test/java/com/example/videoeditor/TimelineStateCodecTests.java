@@ -0,0 +1,178 @@
+package com.example.videoeditor;
+
+import com.example.videoeditor.dto.AudioSegment;
+import com.example.videoeditor.dto.Keyframe;
+import com.example.videoeditor.dto.TextSegment;
+import com.example.videoeditor.dto.TimelineState;
+import com.example.videoeditor.dto.VideoSegment;
+import com.example.videoeditor.entity.Project;
+import com.example.videoeditor.service.TimelineStateCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Every stored timeline goes through this codec, so the formats it must keep reading are pinned here
+public class TimelineStateCodecTests {
+
+	// Same defaults as the application's mapper (unknown properties such as "maxLayer" are ignored)
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+	private final TimelineStateCodec codec = new TimelineStateCodec(objectMapper);
+
+	private TimelineState sampleState() {
+		TimelineState state = new TimelineState();
+		state.setCanvasWidth(1920);
+		state.setCanvasHeight(1080);
+
+		VideoSegment video = new VideoSegment();
+		video.setId("video-1");
+		video.setSourceVideoPath("videos/projects/1/clip.mp4");
+		video.setLayer(0);
+		video.setTimelineStartTime(0);
+		video.setTimelineEndTime(5);
+		video.setEndTime(5);
+		video.addKeyframe("scale", new Keyframe(0, 1.0, "linear"));
+		video.addKeyframe("scale", new Keyframe(2, 1.5, "ease-in"));
+		state.getSegments().add(video);
+
+		TextSegment text = new TextSegment();
+		text.setId("text-1");
+		text.setText("Hello éè ☃");
+		text.setTimelineStartTime(1);
+		text.setTimelineEndTime(3);
+		text.addKeyframe("positionX", new Keyframe(0.5, 120, "linear"));
+		state.getTextSegments().add(text);
+
+		AudioSegment audio = new AudioSegment();
+		audio.setId("audio-1");
+		audio.setAudioPath("audio/projects/1/music.mp3");
+		audio.setLayer(-1);
+		audio.setEndTime(4);
+		audio.setTimelineEndTime(4);
+		audio.addKeyframe("volume", new Keyframe(1, 0.25, "linear"));
+		state.getAudioSegments().add(audio);
+		return state;
+	}
+
+	@Test
+	void encodeDecodeRoundTrip() throws Exception {
+		TimelineState original = sampleState();
+
+		byte[] data = codec.encode(original);
+		assertTrue(codec.isEncoded(data));
+		TimelineState decoded = codec.decode(data);
+
+		assertEquals(objectMapper.writeValueAsString(original), objectMapper.writeValueAsString(decoded));
+		assertEquals("Hello éè ☃", decoded.getTextSegments().get(0).getText());
+		assertEquals(2, decoded.getSegments().get(0).getKeyframes().get("scale").size());
+		assertEquals(0.25, ((Number) decoded.getAudioSegments().get(0).getKeyframes().get("volume").get(0).getValue()).doubleValue());
+	}
+
+	@Test
+	void writeStoresBinaryAndClearsLegacyColumn() throws Exception {
+		Project project = new Project();
+		project.setTimelineState("{\"segments\":[]}");
+
+		codec.write(project, sampleState());
+
+		assertNull(project.getTimelineState());
+		assertTrue(codec.isEncoded(project.getTimelineStateData()));
+		assertEquals("video-1", codec.read(project).getSegments().get(0).getId());
+	}
+
+	@Test
+	void readsLegacyPlainJson() throws Exception {
+		String legacyJson = "{\"segments\":[{\"id\":\"legacy-video\",\"sourceVideoPath\":\"videos/a.mp4\",\"layer\":0,"
+				+ "\"timelineStartTime\":0.0,\"timelineEndTime\":2.0,\"startTime\":0.0,\"endTime\":2.0}],"
+				+ "\"textSegments\":[],\"audioSegments\":[],\"imageSegments\":[],\"filters\":[],\"transitions\":[],"
+				+ "\"maxLayer\":0,\"canvasWidth\":1280,\"canvasHeight\":720}";
+		Project project = new Project();
+		project.setTimelineState(legacyJson);
+
+		TimelineState state = codec.read(project);
+
+		assertEquals(1280, state.getCanvasWidth());
+		assertEquals("legacy-video", state.getSegments().get(0).getId());
+		assertEquals(2.0, state.getSegments().get(0).getTimelineEndTime());
+	}
+
+	@Test
+	void readsEmptyProjectAsEmptyTimeline() throws Exception {
+		TimelineState state = codec.read(new Project());
+
+		assertNotNull(state);
+		assertTrue(state.getSegments().isEmpty());
+	}
+
+	@Test
+	void rejectsDataWithoutHeader() {
+		byte[] plainJson = "{\"segments\":[]}".getBytes();
+
+		assertFalse(codec.isEncoded(plainJson));
+		assertFalse(codec.isEncoded(new byte[]{'T', 'L'}));
+		assertThrows(RuntimeException.class, () -> codec.decode(plainJson));
+	}
+
+	@Test
+	void rejectsUnknownVersionAndEncoding() throws Exception {
+		byte[] data = codec.encode(sampleState());
+
+		byte[] unknownVersion = Arrays.copyOf(data, data.length);
+		unknownVersion[3] = 99;
+		RuntimeException versionError = assertThrows(RuntimeException.class, () -> codec.decode(unknownVersion));
+		assertTrue(versionError.getMessage().contains("Unsupported"));
+
+		byte[] unknownEncoding = Arrays.copyOf(data, data.length);
+		unknownEncoding[4] = 42;
+		RuntimeException encodingError = assertThrows(RuntimeException.class, () -> codec.decode(unknownEncoding));
+		assertTrue(encodingError.getMessage().contains("Unsupported"));
+	}
+
+	@Test
+	void rejectsCorruptAndTruncatedPayload() throws Exception {
+		byte[] data = codec.encode(sampleState());
+
+		byte[] corrupt = Arrays.copyOf(data, data.length);
+		for (int i = 9; i < corrupt.length; i++) {
+			corrupt[i] = (byte) 0xFF;
+		}
+		assertThrows(RuntimeException.class, () -> codec.decode(corrupt));
+
+		byte[] truncated = Arrays.copyOf(data, 9 + (data.length - 9) / 2);
+		assertThrows(RuntimeException.class, () -> codec.decode(truncated));
+	}
+
+	@Test
+	void rejectsNegativeAndOversizedLength() throws Exception {
+		byte[] data = codec.encode(sampleState());
+
+		byte[] negative = Arrays.copyOf(data, data.length);
+		ByteBuffer.wrap(negative, 5, 4).putInt(-1);
+		RuntimeException negativeError = assertThrows(RuntimeException.class, () -> codec.decode(negative));
+		assertTrue(negativeError.getMessage().contains("Invalid"));
+
+		byte[] oversized = Arrays.copyOf(data, data.length);
+		ByteBuffer.wrap(oversized, 5, 4).putInt(Integer.MAX_VALUE);
+		RuntimeException oversizedError = assertThrows(RuntimeException.class, () -> codec.decode(oversized));
+		assertTrue(oversizedError.getMessage().contains("Invalid"));
+	}
+
+	@Test
+	void encodingIsStableForTheSameState() throws Exception {
+		TimelineState state = sampleState();
+
+		assertArrayEquals(codec.encode(state), codec.encode(state));
+		assertEquals(List.of("video-1"), codec.decode(codec.encode(state)).getSegments().stream().map(VideoSegment::getId).toList());
+	}
+}